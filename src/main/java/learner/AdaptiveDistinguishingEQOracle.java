@@ -0,0 +1,194 @@
+package learner;
+
+import de.learnlib.api.EquivalenceOracle;
+import de.learnlib.api.MembershipOracle;
+import de.learnlib.oracles.DefaultQuery;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.util.automata.Automata;
+import net.automatalib.words.Word;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Equivalence oracle testing transition cover * middle part * state identification, like the modified W-method.
+ * <p>
+ * Instead of the complete characterizing set, the state reached after transition * middle is identified with its
+ * suffix of an adaptive distinguishing sequence of the hypothesis. If the hypothesis has no adaptive distinguishing
+ * sequence, the suffixes of a separating family are used. Test words after which the connection is closed are pruned
+ * in the same way as in the modified W-method.
+ */
+public class AdaptiveDistinguishingEQOracle<I, O> implements EquivalenceOracle.MealyEquivalenceOracle<I, O>, CoverageReporter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveDistinguishingEQOracle.class);
+
+    private int maxDepth;
+    private final TestSuiteRunner<I, O> runner;
+    private final CharacterizingSets<I, O> characterizingSets = new CharacterizingSets<>();
+    private TestSuiteOrdering<I> ordering = null;
+    private String coverage = null;
+
+    /**
+     * Constructor.
+     *
+     * @param maxDepth  the maximum length of the "middle" part of the test cases
+     * @param sulOracle interface to the system under learning
+     */
+    public AdaptiveDistinguishingEQOracle(int maxDepth, MembershipOracle<I, Word<O>> sulOracle) {
+        this.maxDepth = maxDepth;
+        this.runner = new TestSuiteRunner<>(sulOracle);
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @param ordering the ordering and sampling applied to the transition cover, or null to test it in cover order
+     */
+    public void setTestSuiteOrdering(TestSuiteOrdering<I> ordering) {
+        this.ordering = ordering;
+        runner.setCostModel(ordering != null ? ordering.getCostModel() : null);
+    }
+
+    @Override
+    public DefaultQuery<I, Word<O>> findCounterExample(MealyMachine<?, I, ?, O> hypothesis, Collection<? extends I> inputs) {
+        List<Word<I>> transCover = Automata.transitionCover(hypothesis, inputs);
+        if (ordering != null)
+            transCover = ordering.order(hypothesis, inputs, transCover);
+
+        CompactHypothesis<I, O> compactHypothesis = CompactHypothesis.create(hypothesis, inputs);
+        SeparatingSequences<I, O> sequences = new SeparatingSequences<>(compactHypothesis);
+
+        List<List<Word<I>>> stateSuffixes = new ArrayList<>(compactHypothesis.size());
+        String method;
+        List<Word<I>> ads = sequences.adaptiveDistinguishingSequence();
+        if (ads != null) {
+            method = "adaptive distinguishing sequence";
+            for (Word<I> suffix : ads) {
+                stateSuffixes.add(Collections.singletonList(suffix));
+            }
+        } else {
+            method = "separating family";
+            stateSuffixes = sequences.separatingFamily();
+        }
+
+        logSuiteSize(hypothesis, compactHypothesis, inputs, method, stateSuffixes);
+
+        runner.resetStatistics();
+        int testedPrefixes = 0;
+        try {
+            for (Word<I> trans : transCover) {
+                testedPrefixes++;
+
+                DefaultQuery<I, Word<O>> ce = runner.testWithStateSuffixes(compactHypothesis, trans, inputs, maxDepth, stateSuffixes);
+                if (ce != null) {
+                    logCoverage("Counterexample found", testedPrefixes, transCover.size());
+                    return ce;
+                }
+            }
+        } catch (Budget.ExhaustedException e) {
+            logCoverage("Budget exhausted", testedPrefixes - 1, transCover.size());
+            throw e;
+        }
+
+        logCoverage("No counterexample found", testedPrefixes, transCover.size());
+        return null;
+    }
+
+    /*
+     * Log the number of test words (without pruning). At debug level, compare it with those of the W-method and
+     * Wp-method for the same depth, which needs the characterizing sets of the hypothesis.
+     */
+    private void logSuiteSize(MealyMachine<?, I, ?, O> hypothesis, CompactHypothesis<I, O> compactHypothesis, Collection<? extends I> inputs, String method, List<List<Word<I>>> stateSuffixes) {
+        int[] suffixCounts = new int[compactHypothesis.size()];
+        for (int q = 0; q < suffixCounts.length; q++) {
+            suffixCounts[q] = stateSuffixes.get(q).size();
+        }
+        long[] words = countWords(compactHypothesis, suffixCounts);
+
+        List<Word<I>> stateCover = new ArrayList<>();
+        List<Word<I>> transitions = new ArrayList<>();
+        Automata.cover(hypothesis, inputs, stateCover, transitions);
+
+        long suite = 0;
+        for (Word<I> prefix : stateCover) {
+            suite += words[compactHypothesis.getState(compactHypothesis.getInitialState(), prefix)];
+        }
+        for (Word<I> prefix : transitions) {
+            suite += words[compactHypothesis.getState(compactHypothesis.getInitialState(), prefix)];
+        }
+        log.info("Test suite size for depth " + maxDepth + " using " + method + ": " + suite + " test words");
+
+        if (!log.isDebugEnabled())
+            return;
+
+        // Number of middle parts of length 1 up to the maximum depth
+        long middles = 0;
+        long power = 1;
+        for (int d = 1; d <= maxDepth; d++) {
+            power *= compactHypothesis.numInputs();
+            middles += power;
+        }
+
+        characterizingSets.update(compactHypothesis);
+        long wSize = Math.max(1, characterizingSets.getCharacterizingSet().size());
+
+        // Without middle parts only the prefixes are tested
+        long prefixes = stateCover.size() + transitions.size();
+        long wMethod = maxDepth == 0 ? prefixes : prefixes * middles * wSize;
+
+        long wpMethod = maxDepth == 0 ? prefixes : stateCover.size() * middles * wSize;
+        Map<Integer, Integer> localSizes = new HashMap<>();
+        for (Word<I> prefix : transitions) {
+            if (maxDepth == 0)
+                break;
+
+            int state = compactHypothesis.getState(compactHypothesis.getInitialState(), prefix);
+            Integer localSize = localSizes.get(state);
+            if (localSize == null) {
+                localSize = Math.max(1, characterizingSets.getStateCharacterizingSet(state).size());
+                localSizes.put(state, localSize);
+            }
+            wpMethod += middles * localSize;
+        }
+
+        log.debug("Test suite size for depth " + maxDepth + ": W-method " + wMethod + ", Wp-method " + wpMethod + " test words");
+    }
+
+    /*
+     * Number of transition * middle * suffix words tested from every state, without pruning
+     */
+    private long[] countWords(CompactHypothesis<I, O> hypothesis, int[] suffixCounts) {
+        int size = hypothesis.size();
+        long[] words = new long[size];
+        if (maxDepth == 0) {
+            Arrays.fill(words, 1);
+            return words;
+        }
+
+        for (int d = 1; d <= maxDepth; d++) {
+            long[] next = new long[size];
+            for (int q = 0; q < size; q++) {
+                for (int i = 0; i < hypothesis.numInputs(); i++) {
+                    int succ = hypothesis.getSuccessor(q, i);
+                    next[q] += suffixCounts[succ] + (d > 1 ? words[succ] : 0);
+                }
+            }
+            words = next;
+        }
+        return words;
+    }
+
+    private void logCoverage(String result, int testedPrefixes, int selectedPrefixes) {
+        int totalPrefixes = (ordering != null) ? ordering.getTotal() : selectedPrefixes;
+        coverage = result + " after testing " + testedPrefixes + " of " + selectedPrefixes + " selected prefixes (" + totalPrefixes + " in transition cover) with " + runner.getTestWords() + " test words covering " + runner.getCoveredWords() + " words of the test suite";
+        log.info(coverage);
+    }
+
+    @Override
+    public String getCoverage() {
+        return coverage;
+    }
+}
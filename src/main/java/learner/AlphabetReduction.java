@@ -0,0 +1,169 @@
+package learner;
+
+import de.learnlib.api.MembershipOracle;
+import de.learnlib.oracles.DefaultQuery;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import net.automatalib.words.impl.SimpleAlphabet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Mapping of input symbols to representatives, used to learn over a reduced alphabet.
+ * <p>
+ * Alphabets often contain symbols that behave the same in every state (for example different alerts). Learning
+ * costs grow with the size of the alphabet, so such symbols are merged into their representative before learning.
+ * The merge is a guess based on a probe of a sample of states, which is validated during equivalence testing by
+ * {@link AlphabetReductionEQOracle}.
+ */
+public class AlphabetReduction<I> {
+
+    private static final Logger log = LoggerFactory.getLogger(AlphabetReduction.class);
+
+    private final Alphabet<I> alphabet;
+    private final Map<I, I> representatives = new LinkedHashMap<>();
+
+    /**
+     * Create a reduction in which every symbol represents itself.
+     */
+    public AlphabetReduction(Alphabet<I> alphabet) {
+        this.alphabet = alphabet;
+        for (I symbol : alphabet) {
+            representatives.put(symbol, symbol);
+        }
+    }
+
+    /**
+     * Merge symbols that produce the same outputs from a sample of states. States are reached with random prefixes of
+     * up to the given length (only the empty prefix for a length below 1), after every symbol one random symbol is
+     * appended to also compare the reached states.
+     */
+    public static <I, O> AlphabetReduction<I> probe(MembershipOracle<I, Word<O>> oracle, Alphabet<I> alphabet, int samples, int depth, Random random) {
+        List<I> symbols = new ArrayList<>(alphabet);
+
+        List<DefaultQuery<I, Word<O>>> queries = new ArrayList<>();
+        for (int n = 0; n < samples; n++) {
+            WordBuilder<I> wb = new WordBuilder<>();
+            int length = n == 0 || depth < 1 ? 0 : 1 + random.nextInt(depth);
+            for (int i = 0; i < length; i++) {
+                wb.append(symbols.get(random.nextInt(symbols.size())));
+            }
+            Word<I> prefix = wb.toWord();
+            I next = symbols.get(random.nextInt(symbols.size()));
+
+            for (I symbol : symbols) {
+                queries.add(new DefaultQuery<>(prefix, Word.fromSymbols(symbol, next)));
+            }
+        }
+        oracle.processQueries(queries);
+
+        // Outputs of every symbol over all samples
+        Map<I, List<Word<O>>> signatures = new LinkedHashMap<>();
+        for (I symbol : symbols) {
+            signatures.put(symbol, new ArrayList<Word<O>>());
+        }
+        for (int i = 0; i < queries.size(); i++) {
+            signatures.get(symbols.get(i % symbols.size())).add(queries.get(i).getOutput());
+        }
+
+        AlphabetReduction<I> reduction = new AlphabetReduction<>(alphabet);
+        Map<List<Word<O>>, I> seen = new HashMap<>();
+        for (Map.Entry<I, List<Word<O>>> entry : signatures.entrySet()) {
+            I representative = seen.get(entry.getValue());
+            if (representative == null) {
+                seen.put(entry.getValue(), entry.getKey());
+            } else {
+                reduction.representatives.put(entry.getKey(), representative);
+                log.info("Merging input symbol " + entry.getKey() + " into " + representative);
+            }
+        }
+
+        log.info("Alphabet reduced from " + alphabet.size() + " to " + reduction.getReducedAlphabet().size() + " symbols using " + queries.size() + " queries");
+        return reduction;
+    }
+
+    public Alphabet<I> getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @return the representatives, in the order of the original alphabet
+     */
+    public Alphabet<I> getReducedAlphabet() {
+        Alphabet<I> reduced = new SimpleAlphabet<>();
+        for (Map.Entry<I, I> entry : representatives.entrySet()) {
+            if (entry.getKey().equals(entry.getValue()))
+                reduced.add(entry.getKey());
+        }
+        return reduced;
+    }
+
+    public boolean isReduced() {
+        return getReducedAlphabet().size() < alphabet.size();
+    }
+
+    public I getRepresentative(I symbol) {
+        return representatives.get(symbol);
+    }
+
+    /**
+     * @return the word with every symbol replaced by its representative
+     */
+    public Word<I> reduce(Word<I> word) {
+        WordBuilder<I> wb = new WordBuilder<>(word.length());
+        for (I symbol : word) {
+            wb.append(representatives.get(symbol));
+        }
+        return wb.toWord();
+    }
+
+    /**
+     * Make the given symbols represent themselves again.
+     */
+    public void split(Collection<? extends I> symbols) {
+        for (I symbol : symbols) {
+            log.info("Splitting input symbol " + symbol + " from " + representatives.get(symbol));
+            representatives.put(symbol, symbol);
+        }
+    }
+
+    /**
+     * @return the hypothesis over the reduced alphabet extended to the full alphabet, every symbol behaves as its
+     * representative
+     */
+    public <O> CompactMealy<I, O> expand(MealyMachine<?, I, ?, O> hypothesis) {
+        CompactHypothesis<I, O> hyp = CompactHypothesis.create(hypothesis, getReducedAlphabet());
+
+        CompactMealy<I, O> result = new CompactMealy<>(alphabet);
+        result.addInitialState();
+        for (int i = 1; i < hyp.size(); i++) {
+            result.addState();
+        }
+
+        for (int state = 0; state < hyp.size(); state++) {
+            for (I symbol : alphabet) {
+                int i = hyp.getInputIndex(representatives.get(symbol));
+                result.addTransition(state, symbol, hyp.getSuccessor(state, i), hyp.getOutput(state, i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write the mapping of every symbol to its representative.
+     */
+    public void write(String filename) throws IOException {
+        try (PrintStream out = new PrintStream(filename)) {
+            for (Map.Entry<I, I> entry : representatives.entrySet()) {
+                out.println(entry.getKey() + " " + entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package learner;
+
+import de.learnlib.api.EquivalenceOracle;
+import de.learnlib.api.MembershipOracle;
+import de.learnlib.oracles.DefaultQuery;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Equivalence oracle for a hypothesis learned over a reduced alphabet.
+ * <p>
+ * The hypothesis is extended to the full alphabet before it is tested, so merged symbols are tested as well. A
+ * counterexample that still is one after replacing every symbol by its representative is returned in reduced form.
+ * Otherwise some merged symbols behave differently from their representative. These are recorded as split, and no
+ * counterexample is returned, so learning has to be restarted with the split symbols added to the alphabet.
+ */
+public class AlphabetReductionEQOracle<I, O> implements EquivalenceOracle.MealyEquivalenceOracle<I, O> {
+
+    private static final Logger log = LoggerFactory.getLogger(AlphabetReductionEQOracle.class);
+
+    private final EquivalenceOracle<MealyMachine<?, I, ?, O>, I, Word<O>> eqOracle;
+    private final MembershipOracle<I, Word<O>> sulOracle;
+    private final AlphabetReduction<I> reduction;
+
+    private final Set<I> splitSymbols = new LinkedHashSet<>();
+
+    public AlphabetReductionEQOracle(EquivalenceOracle<MealyMachine<?, I, ?, O>, I, Word<O>> eqOracle, MembershipOracle<I, Word<O>> sulOracle, AlphabetReduction<I> reduction) {
+        this.eqOracle = eqOracle;
+        this.sulOracle = sulOracle;
+        this.reduction = reduction;
+    }
+
+    @Override
+    public DefaultQuery<I, Word<O>> findCounterExample(MealyMachine<?, I, ?, O> hypothesis, Collection<? extends I> inputs) {
+        splitSymbols.clear();
+        if (!reduction.isReduced())
+            return eqOracle.findCounterExample(hypothesis, inputs);
+
+        DefaultQuery<I, Word<O>> ce = eqOracle.findCounterExample(reduction.expand(hypothesis), reduction.getAlphabet());
+        if (ce == null)
+            return null;
+
+        Word<I> input = ce.getInput();
+        Word<I> reduced = reduction.reduce(input);
+        if (reduced.equals(input))
+            return ce;
+
+        Word<O> output = query(input);
+        Word<O> reducedOutput = query(reduced);
+        if (reducedOutput.equals(output)) {
+            DefaultQuery<I, Word<O>> result = new DefaultQuery<>(reduced);
+            result.answer(reducedOutput);
+            return result;
+        }
+
+        // Find the merged symbols that cause the difference, try them one by one
+        Set<I> merged = new LinkedHashSet<>();
+        for (I symbol : input) {
+            if (!reduction.getRepresentative(symbol).equals(symbol))
+                merged.add(symbol);
+        }
+        for (I symbol : merged) {
+            WordBuilder<I> wb = new WordBuilder<>(input.length());
+            for (I s : input) {
+                wb.append(s.equals(symbol) ? reduction.getRepresentative(s) : s);
+            }
+            if (!query(wb.toWord()).equals(output))
+                splitSymbols.add(symbol);
+        }
+        if (splitSymbols.isEmpty())
+            splitSymbols.addAll(merged);
+
+        log.info("Merged input symbols " + splitSymbols + " behave differently from their representative on " + input);
+        return null;
+    }
+
+    private Word<O> query(Word<I> input) {
+        DefaultQuery<I, Word<O>> query = new DefaultQuery<>(input);
+        sulOracle.processQueries(Collections.singleton(query));
+        return query.getOutput();
+    }
+
+    /**
+     * @return the symbols found to differ from their representative in the last call, if this is not empty the
+     * hypothesis was not tested completely
+     */
+    public Set<I> getSplitSymbols() {
+        return splitSymbols;
+    }
+}
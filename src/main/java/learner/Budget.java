@@ -0,0 +1,140 @@
+package learner;
+
+/**
+ * Limits on the number of queries, steps and the time spent on the SUL, in total and per equivalence round.
+ * <p>
+ * The counters are updated by {@link BudgetSUL} before every reset and step. When a limit is reached an
+ * {@link ExhaustedException} is thrown instead of performing the action, which ends the experiment with the last
+ * complete hypothesis. A limit of 0 means no limit. The counters may be shared by several SUL instances used from
+ * different threads.
+ */
+public class Budget {
+
+    /**
+     * Thrown when a budget is exhausted.
+     */
+    public static class ExhaustedException extends RuntimeException {
+        private final boolean round;
+
+        public ExhaustedException(String message, boolean round) {
+            super(message);
+            this.round = round;
+        }
+
+        /**
+         * @return true if only the budget of the current equivalence round is exhausted
+         */
+        public boolean isRound() {
+            return round;
+        }
+    }
+
+    private final long maxQueries;
+    private final long maxSteps;
+    private final long maxTime;
+    private final long maxRoundQueries;
+    private final long maxRoundSteps;
+    private final long maxRoundTime;
+
+    private final long start;
+    private long queries = 0;
+    private long steps = 0;
+
+    private String stopped = null;
+    private boolean inRound = false;
+    private long roundStart;
+    private long roundQueries;
+    private long roundSteps;
+
+    /**
+     * Constructor.
+     *
+     * @param maxQueries      maximum number of queries (resets) in total
+     * @param maxSteps        maximum number of steps in total
+     * @param maxTime         maximum time in total in milliseconds, starting now
+     * @param maxRoundQueries maximum number of queries per equivalence round
+     * @param maxRoundSteps   maximum number of steps per equivalence round
+     * @param maxRoundTime    maximum time per equivalence round in milliseconds
+     */
+    public Budget(long maxQueries, long maxSteps, long maxTime, long maxRoundQueries, long maxRoundSteps, long maxRoundTime) {
+        this.maxQueries = maxQueries;
+        this.maxSteps = maxSteps;
+        this.maxTime = maxTime;
+        this.maxRoundQueries = maxRoundQueries;
+        this.maxRoundSteps = maxRoundSteps;
+        this.maxRoundTime = maxRoundTime;
+        this.start = System.currentTimeMillis();
+    }
+
+    public boolean isUnlimited() {
+        return maxQueries <= 0 && maxSteps <= 0 && maxTime <= 0 && maxRoundQueries <= 0 && maxRoundSteps <= 0 && maxRoundTime <= 0;
+    }
+
+    public synchronized void startRound() {
+        inRound = true;
+        roundStart = System.currentTimeMillis();
+        roundQueries = 0;
+        roundSteps = 0;
+    }
+
+    public synchronized void endRound() {
+        inRound = false;
+    }
+
+    /**
+     * Account for a query, called before the SUL is reset.
+     */
+    public synchronized void query() {
+        checkTime();
+        if (maxQueries > 0 && queries >= maxQueries)
+            throw new ExhaustedException("Query budget of " + maxQueries + " queries exhausted", false);
+        if (inRound && maxRoundQueries > 0 && roundQueries >= maxRoundQueries)
+            throw new ExhaustedException("Round query budget of " + maxRoundQueries + " queries exhausted", true);
+
+        queries++;
+        roundQueries++;
+    }
+
+    /**
+     * Account for a step, called before the step is performed on the SUL.
+     */
+    public synchronized void step() {
+        checkTime();
+        if (maxSteps > 0 && steps >= maxSteps)
+            throw new ExhaustedException("Step budget of " + maxSteps + " steps exhausted", false);
+        if (inRound && maxRoundSteps > 0 && roundSteps >= maxRoundSteps)
+            throw new ExhaustedException("Round step budget of " + maxRoundSteps + " steps exhausted", true);
+
+        steps++;
+        roundSteps++;
+    }
+
+    /**
+     * Exhaust the budget, so every SUL sharing it stops at its next reset or step.
+     */
+    public synchronized void stop(String reason) {
+        stopped = reason;
+    }
+
+    private void checkTime() {
+        if (stopped != null)
+            throw new ExhaustedException(stopped, false);
+        long now = System.currentTimeMillis();
+        if (maxTime > 0 && now - start >= maxTime)
+            throw new ExhaustedException("Time budget of " + maxTime + " ms exhausted", false);
+        if (inRound && maxRoundTime > 0 && now - roundStart >= maxRoundTime)
+            throw new ExhaustedException("Round time budget of " + maxRoundTime + " ms exhausted", true);
+    }
+
+    public synchronized long getQueries() {
+        return queries;
+    }
+
+    public synchronized long getSteps() {
+        return steps;
+    }
+
+    public long getTime() {
+        return System.currentTimeMillis() - start;
+    }
+}
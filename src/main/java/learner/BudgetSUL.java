@@ -0,0 +1,29 @@
+package learner;
+
+import de.learnlib.api.SUL;
+
+/**
+ * SUL that accounts every reset and step on a {@link Budget} before passing it on.
+ */
+public class BudgetSUL<I, O> implements SUL<I, O> {
+
+    private final SUL<I, O> sul;
+    private final Budget budget;
+
+    public BudgetSUL(SUL<I, O> sul, Budget budget) {
+        this.sul = sul;
+        this.budget = budget;
+    }
+
+    @Override
+    public void reset() {
+        budget.query();
+        sul.reset();
+    }
+
+    @Override
+    public O step(I input) {
+        budget.step();
+        return sul.step(input);
+    }
+}
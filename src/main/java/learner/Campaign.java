@@ -0,0 +1,205 @@
+package learner;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs the learning experiments of all configurations in a directory, several at the same time.
+ * <p>
+ * Every experiment gets its own output directory (named after the configuration file) and its own range of ports: the
+ * port of the target and the ports of the speculative SULs. The target command should use the placeholder {port}.
+ * At most max_parallel experiments run at the same time, and together they start at most max_processes targets.
+ * These settings, and the first port and output directory, are read from campaign.properties in the directory.
+ * Every experiment logs to its own output directory. When all experiments are done, a summary table is written.
+ * <p>
+ * Usage: Campaign directory
+ */
+public class Campaign {
+
+    private static final Logger log = LoggerFactory.getLogger(Campaign.class);
+
+    private static final String SETTINGS = "campaign.properties";
+
+    private final List<File> configFiles;
+    private final String outputDir;
+    private final int maxParallel;
+    private final int maxProcesses;
+    private final int basePort;
+
+    private static class Result {
+        final String name;
+        String status = "waiting";
+        long wallTime = 0;
+        Properties learningStatus = new Properties();
+
+        Result(String name) {
+            this.name = name;
+        }
+    }
+
+    public Campaign(List<File> configFiles, String outputDir, int maxParallel, int maxProcesses, int basePort) {
+        this.configFiles = configFiles;
+        this.outputDir = outputDir;
+        this.maxParallel = maxParallel;
+        this.maxProcesses = maxProcesses;
+        this.basePort = basePort;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1 || !new File(args[0]).isDirectory()) {
+            System.out.println("Usage: Campaign directory");
+            return;
+        }
+
+        Properties settings = new Properties();
+        File settingsFile = new File(args[0], SETTINGS);
+        if (settingsFile.exists()) {
+            try (InputStream input = new FileInputStream(settingsFile)) {
+                settings.load(input);
+            }
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        String outputDir = settings.getProperty("output_dir", "output/campaign");
+        int maxParallel = Integer.parseInt(settings.getProperty("max_parallel", Integer.toString(Math.max(1, cores / 2))));
+        int maxProcesses = Integer.parseInt(settings.getProperty("max_processes", Integer.toString(cores)));
+        int basePort = Integer.parseInt(settings.getProperty("base_port", "20000"));
+
+        List<File> configFiles = new ArrayList<>();
+        File[] files = new File(args[0]).listFiles();
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.getName().endsWith(".properties") && !file.getName().equals(SETTINGS))
+                configFiles.add(file);
+        }
+
+        new File(outputDir).mkdirs();
+        configureLogging(outputDir);
+
+        new Campaign(configFiles, outputDir, maxParallel, maxProcesses, basePort).run();
+    }
+
+    static void configureLogging(String campaignDir) throws Exception {
+        LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        loggerContext.reset();
+        JoranConfigurator configurator = new JoranConfigurator();
+        loggerContext.putProperty("campaignDirectory", campaignDir);
+        configurator.setContext(loggerContext);
+        configurator.doConfigure(Campaign.class.getClassLoader().getResource("campaign-log.xml"));
+    }
+
+    public void run() throws Exception {
+        log.info("Running " + configFiles.size() + " experiments, at most " + maxParallel + " at the same time with " + maxProcesses + " targets");
+        long start = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(maxParallel);
+        final Semaphore processes = new Semaphore(maxProcesses, true);
+        List<Result> results = new ArrayList<>();
+        int port = basePort;
+
+        for (final File configFile : configFiles) {
+            final String name = configFile.getName().replaceAll("\\.properties$", "");
+            final Result result = new Result(name);
+            results.add(result);
+
+            final TLSConfig config;
+            try {
+                config = new TLSConfig(configFile.getPath());
+            } catch (Exception e) {
+                log.error("Could not read " + configFile + ": " + e);
+                result.status = "invalid configuration";
+                continue;
+            }
+            if (!config.mode.equals("learn")) {
+                log.info("Skipping " + name + ", mode " + config.mode);
+                result.status = "skipped";
+                continue;
+            }
+
+            // The target and the speculative SULs use consecutive ports
+            config.port = port;
+            config.output_dir = outputDir + "/" + name;
+            port += 1 + config.speculative_suls;
+            if (config.cmd != null && !config.cmd.contains("{port}"))
+                log.warn("Command of " + name + " does not use {port}, the target may not use port " + config.port);
+
+            final int needed = Math.min(maxProcesses, config.workers != null ? 0 : 1 + config.speculative_suls);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        processes.acquire(needed);
+                    } catch (InterruptedException e) {
+                        result.status = "interrupted";
+                        return;
+                    }
+                    try {
+                        runExperiment(configFile, config, result);
+                    } finally {
+                        processes.release(needed);
+                    }
+                }
+            });
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        List<String> summary = summarize(results);
+        Files.write(Paths.get(outputDir + "/summary.txt"), summary, Charset.defaultCharset());
+        for (String line : summary) {
+            log.info(line);
+        }
+        log.info("Campaign finished in " + (System.currentTimeMillis() - start) / 1000 + " s");
+    }
+
+    private void runExperiment(File configFile, TLSConfig config, Result result) {
+        new File(config.output_dir).mkdirs();
+        // Threads started by the experiment inherit the MDC, so they log to the same directory
+        MDC.put("logDirectory", config.output_dir);
+        log.info("Starting " + result.name + " on port " + config.port);
+        result.status = "running";
+        long start = System.currentTimeMillis();
+        try {
+            Learner learner = new Learner(config);
+            learner.learn();
+            learner.finish(configFile.getPath());
+
+            try (InputStream input = new FileInputStream(config.output_dir + "/status.properties")) {
+                result.learningStatus.load(input);
+            }
+            result.status = result.learningStatus.getProperty("status", "complete");
+        } catch (Exception | Error e) {
+            log.error("Experiment " + result.name + " failed", e);
+            result.status = "failed: " + e;
+        } finally {
+            result.wallTime = System.currentTimeMillis() - start;
+            log.info("Finished " + result.name + " (" + result.status + ") in " + result.wallTime / 1000 + " s");
+            MDC.remove("logDirectory");
+        }
+    }
+
+    private static List<String> summarize(List<Result> results) {
+        String format = "%-30s %-20s %8s %8s %10s %12s %10s";
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(format, "experiment", "status", "states", "rounds", "queries", "steps", "time (s)"));
+        for (Result result : results) {
+            Properties status = result.learningStatus;
+            lines.add(String.format(format, result.name, result.status.length() > 20 ? result.status.substring(0, 20) : result.status, status.getProperty("states", "-"), status.getProperty("rounds", "-"), status.getProperty("queries", "-"), status.getProperty("steps", "-"), result.wallTime / 1000));
+        }
+        return lines;
+    }
+}
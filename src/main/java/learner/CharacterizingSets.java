@@ -0,0 +1,385 @@
+package learner;
+
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the characterizing set and the state characterizing sets of a hypothesis, as a replacement for
+ * {@link net.automatalib.util.automata.Automata#characterizingSet} in the equivalence oracles.
+ * <p>
+ * The states are partitioned by partition refinement: in level k two states are in the same block if they produce
+ * the same outputs for all words up to length k. The level in which two states are split gives their shortest
+ * separating word, which is only constructed when it is needed. Signatures and state characterizing sets are computed
+ * in parallel.
+ * <p>
+ * Separating words are kept between rounds, identified by the access sequences of the states. A refined hypothesis
+ * mostly keeps its access sequences, so the words of the previous round are checked and reused where they still
+ * separate the states. The previous characterizing sets are tried first when the new sets are built, so they stay
+ * mostly the same between rounds.
+ */
+public class CharacterizingSets<I, O> {
+
+    private static final Logger log = LoggerFactory.getLogger(CharacterizingSets.class);
+
+    private CompactHypothesis<I, O> hypothesis;
+    private int size;
+    private List<Word<I>> accessSequences;
+
+    // Block of every state per level of the partition refinement
+    private List<int[]> levels;
+
+    // Separating words of this round indexed by p * size + q, and of all rounds by access sequences
+    private Map<Integer, Word<I>> separatingWords;
+    private final Map<Word<I>, Map<Word<I>, Word<I>>> knownWords = new ConcurrentHashMap<>();
+
+    private List<Word<I>> characterizingSet;
+    private List<List<Word<I>>> stateCharacterizingSets;
+    private List<Word<I>> previousCharacterizingSet = Collections.emptyList();
+    private Map<Word<I>, List<Word<I>>> previousStateCharacterizingSets = new HashMap<>();
+
+    private final AtomicLong computed = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    /**
+     * Prepare for a new hypothesis. The characterizing sets are computed when they are requested.
+     */
+    public void update(CompactHypothesis<I, O> hypothesis) {
+        long start = System.currentTimeMillis();
+
+        if (characterizingSet != null)
+            previousCharacterizingSet = characterizingSet;
+        if (stateCharacterizingSets != null) {
+            previousStateCharacterizingSets = new HashMap<>();
+            for (int q = 0; q < size; q++) {
+                previousStateCharacterizingSets.put(accessSequences.get(q), stateCharacterizingSets.get(q));
+            }
+        }
+
+        this.hypothesis = hypothesis;
+        this.size = hypothesis.size();
+        this.accessSequences = accessSequences(hypothesis);
+        this.levels = refine(hypothesis);
+        this.separatingWords = new ConcurrentHashMap<>();
+        this.characterizingSet = null;
+        this.stateCharacterizingSets = null;
+        computed.set(0);
+        reused.set(0);
+
+        log.info("Partition refinement of " + size + " states: " + (levels.size() - 1) + " levels, " + countBlocks(levels.get(levels.size() - 1)) + " blocks in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /*
+     * Breadth-first access sequences, indexed by state
+     */
+    private static <I, O> List<Word<I>> accessSequences(CompactHypothesis<I, O> hypothesis) {
+        List<Word<I>> result = new ArrayList<>(Collections.<Word<I>>nCopies(hypothesis.size(), null));
+        Deque<Integer> queue = new ArrayDeque<>();
+        result.set(hypothesis.getInitialState(), Word.<I>epsilon());
+        queue.add(hypothesis.getInitialState());
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < hypothesis.numInputs(); i++) {
+                int succ = hypothesis.getSuccessor(state, i);
+                if (result.get(succ) == null) {
+                    result.set(succ, result.get(state).append(hypothesis.getInputs().get(i)));
+                    queue.add(succ);
+                }
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Moore partition refinement: level 0 has a single block, level 1 splits on the outputs, level k on the blocks of
+     * the successors in level k - 1. Stops when a level does not split any block.
+     */
+    private static <I, O> List<int[]> refine(final CompactHypothesis<I, O> hypothesis) {
+        final int size = hypothesis.size();
+        final int numInputs = hypothesis.numInputs();
+        List<int[]> levels = new ArrayList<>();
+        levels.add(new int[size]);
+
+        int blocks = 1;
+        while (true) {
+            final int[] previous = levels.get(levels.size() - 1);
+            final boolean first = levels.size() == 1;
+
+            final List<List<Object>> signatures = new ArrayList<>(Collections.<List<Object>>nCopies(size, null));
+            IntStream.range(0, size).parallel().forEach(p -> {
+                List<Object> signature = new ArrayList<>(numInputs + 1);
+                signature.add(previous[p]);
+                for (int i = 0; i < numInputs; i++) {
+                    signature.add(first ? hypothesis.getOutput(p, i) : previous[hypothesis.getSuccessor(p, i)]);
+                }
+                signatures.set(p, signature);
+            });
+
+            int[] next = new int[size];
+            Map<List<Object>, Integer> ids = new HashMap<>();
+            for (int p = 0; p < size; p++) {
+                Integer id = ids.get(signatures.get(p));
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(signatures.get(p), id);
+                }
+                next[p] = id;
+            }
+
+            if (ids.size() == blocks)
+                return levels;
+            levels.add(next);
+            blocks = ids.size();
+        }
+    }
+
+    private static int countBlocks(int[] blocks) {
+        Set<Integer> set = new HashSet<>();
+        for (int block : blocks) {
+            set.add(block);
+        }
+        return set.size();
+    }
+
+    /**
+     * @return the breadth-first access sequence of the state in the current hypothesis
+     */
+    public Word<I> getAccessSequence(int state) {
+        return accessSequences.get(state);
+    }
+
+    /**
+     * @return a shortest word separating the states, or null if they are equivalent
+     */
+    public Word<I> getSeparatingWord(int p, int q) {
+        if (p == q)
+            return null;
+
+        Integer key = Math.min(p, q) * size + Math.max(p, q);
+        Word<I> word = separatingWords.get(key);
+        if (word != null)
+            return word;
+
+        Map<Word<I>, Word<I>> known = knownWords.get(accessSequences.get(p));
+        word = known == null ? null : known.get(accessSequences.get(q));
+        if (word != null && separates(p, q, word)) {
+            reused.incrementAndGet();
+        } else {
+            word = computeSeparatingWord(p, q);
+            if (word == null)
+                return null;
+            computed.incrementAndGet();
+            remember(accessSequences.get(p), accessSequences.get(q), word);
+            remember(accessSequences.get(q), accessSequences.get(p), word);
+        }
+
+        separatingWords.put(key, word);
+        return word;
+    }
+
+    private void remember(Word<I> p, Word<I> q, Word<I> word) {
+        Map<Word<I>, Word<I>> known = knownWords.get(p);
+        if (known == null) {
+            knownWords.putIfAbsent(p, new ConcurrentHashMap<Word<I>, Word<I>>());
+            known = knownWords.get(p);
+        }
+        known.put(q, word);
+    }
+
+    /*
+     * Follow the levels down from the first level in which the states are in different blocks
+     */
+    private Word<I> computeSeparatingWord(int p, int q) {
+        int level = 1;
+        while (level < levels.size() && levels.get(level)[p] == levels.get(level)[q]) {
+            level++;
+        }
+        if (level == levels.size())
+            return null;
+
+        WordBuilder<I> word = new WordBuilder<>(level);
+        while (true) {
+            for (int i = 0; i < hypothesis.numInputs(); i++) {
+                int sp = hypothesis.getSuccessor(p, i);
+                int sq = hypothesis.getSuccessor(q, i);
+                boolean split = level == 1 ? !Objects.equals(hypothesis.getOutput(p, i), hypothesis.getOutput(q, i)) : levels.get(level - 1)[sp] != levels.get(level - 1)[sq];
+                if (split) {
+                    word.append(hypothesis.getInputs().get(i));
+                    p = sp;
+                    q = sq;
+                    break;
+                }
+            }
+            if (level == 1)
+                return word.toWord();
+            level--;
+        }
+    }
+
+    private boolean separates(int p, int q, Word<I> word) {
+        int[] indices = indices(word);
+        return indices != null && !sameOutputs(p, q, indices);
+    }
+
+    /*
+     * Input indices of the word, or null if it contains inputs the hypothesis does not have
+     */
+    private int[] indices(Word<I> word) {
+        int[] indices = new int[word.length()];
+        for (int i = 0; i < indices.length; i++) {
+            if (!hypothesis.getInputs().contains(word.getSymbol(i)))
+                return null;
+            indices[i] = hypothesis.getInputIndex(word.getSymbol(i));
+        }
+        return indices;
+    }
+
+    private boolean sameOutputs(int p, int q, int[] word) {
+        for (int input : word) {
+            if (!Objects.equals(hypothesis.getOutput(p, input), hypothesis.getOutput(q, input)))
+                return false;
+            p = hypothesis.getSuccessor(p, input);
+            q = hypothesis.getSuccessor(q, input);
+        }
+        return true;
+    }
+
+    /**
+     * @return a set of words that separates every pair of states
+     */
+    public List<Word<I>> getCharacterizingSet() {
+        if (characterizingSet != null)
+            return characterizingSet;
+
+        long start = System.currentTimeMillis();
+        List<Word<I>> result = new ArrayList<>();
+
+        // States with the same class produce the same outputs for all words added so far
+        int[] classes = new int[size];
+        for (Word<I> word : previousCharacterizingSet) {
+            int[] indices = indices(word);
+            if (indices != null && split(classes, indices))
+                result.add(word);
+        }
+
+        while (true) {
+            Map<Integer, Integer> firstOfClass = new HashMap<>();
+            Word<I> word = null;
+            for (int q = 0; q < size && word == null; q++) {
+                Integer p = firstOfClass.get(classes[q]);
+                if (p == null)
+                    firstOfClass.put(classes[q], q);
+                else
+                    word = getSeparatingWord(p, q);
+            }
+            if (word == null)
+                break;
+
+            split(classes, indices(word));
+            result.add(word);
+        }
+
+        characterizingSet = result;
+        log.info("Characterizing set of " + result.size() + " words in " + (System.currentTimeMillis() - start) + " ms (" + computed.get() + " separating words computed, " + reused.get() + " reused)");
+        return result;
+    }
+
+    /*
+     * Refine the classes by the output for the word. A new class is represented by its first state, and the states of
+     * the old class are compared with these representatives.
+     *
+     * @return true if a class was split
+     */
+    private boolean split(int[] classes, int[] word) {
+        Map<Integer, List<int[]>> representatives = new HashMap<>();
+        int count = 0;
+        for (int p = 0; p < size; p++) {
+            List<int[]> candidates = representatives.get(classes[p]);
+            if (candidates == null) {
+                candidates = new ArrayList<>();
+                representatives.put(classes[p], candidates);
+            }
+
+            int id = -1;
+            for (int[] candidate : candidates) {
+                if (sameOutputs(candidate[0], p, word)) {
+                    id = candidate[1];
+                    break;
+                }
+            }
+            if (id == -1) {
+                id = count++;
+                candidates.add(new int[]{p, id});
+            }
+            classes[p] = id;
+        }
+        return count > representatives.size();
+    }
+
+    /**
+     * @return a set of words that separates the state from every other state
+     */
+    public List<Word<I>> getStateCharacterizingSet(int state) {
+        if (stateCharacterizingSets == null) {
+            long start = System.currentTimeMillis();
+            final List<List<Word<I>>> sets = new ArrayList<>(Collections.<List<Word<I>>>nCopies(size, null));
+            IntStream.range(0, size).parallel().forEach(q -> sets.set(q, computeStateCharacterizingSet(q)));
+            stateCharacterizingSets = sets;
+            log.info("State characterizing sets in " + (System.currentTimeMillis() - start) + " ms (" + computed.get() + " separating words computed, " + reused.get() + " reused)");
+        }
+        return stateCharacterizingSets.get(state);
+    }
+
+    private List<Word<I>> computeStateCharacterizingSet(int state) {
+        List<Word<I>> result = new ArrayList<>();
+
+        // States not separated yet are kept at the front of the array, equivalent states are left out
+        int[] finalBlocks = levels.get(levels.size() - 1);
+        int[] remaining = new int[size];
+        int count = 0;
+        for (int q = 0; q < size; q++) {
+            if (finalBlocks[q] != finalBlocks[state])
+                remaining[count++] = q;
+        }
+
+        List<Word<I>> previous = previousStateCharacterizingSets.get(accessSequences.get(state));
+        if (previous != null) {
+            for (Word<I> word : previous) {
+                int[] indices = indices(word);
+                if (indices == null)
+                    continue;
+                int left = separateFrom(state, indices, remaining, count);
+                if (left < count)
+                    result.add(word);
+                count = left;
+            }
+        }
+
+        while (count > 0) {
+            Word<I> word = getSeparatingWord(state, remaining[0]);
+            count = separateFrom(state, indices(word), remaining, count);
+            result.add(word);
+        }
+        return result;
+    }
+
+    /*
+     * Remove the states that are separated from the state by the word
+     *
+     * @return the number of states left
+     */
+    private int separateFrom(int state, int[] word, int[] remaining, int count) {
+        int left = 0;
+        for (int i = 0; i < count; i++) {
+            if (sameOutputs(state, remaining[i], word))
+                remaining[left++] = remaining[i];
+        }
+        return left;
+    }
+}
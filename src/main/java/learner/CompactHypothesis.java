@@ -0,0 +1,168 @@
+package learner;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+import java.util.*;
+
+/**
+ * Int-indexed snapshot of the transition table of a Mealy hypothesis.
+ * <p>
+ * Computing outputs on the hypothesis object itself goes through maps and transition objects for every symbol. The
+ * equivalence oracles evaluate many words sharing long prefixes, so they keep the reached state of a prefix and
+ * continue from there using this table.
+ */
+public class CompactHypothesis<I, O> {
+
+    private final List<I> inputs;
+    private final Map<I, Integer> inputIndex;
+    private final int numInputs;
+    private final int size;
+    private final int initialState;
+
+    // Indexed by state * numInputs + input
+    private final int[] successors;
+    private final Object[] outputs;
+
+    private CompactHypothesis(List<I> inputs, int size, int initialState, int[] successors, Object[] outputs) {
+        this.inputs = inputs;
+        this.numInputs = inputs.size();
+        this.size = size;
+        this.initialState = initialState;
+        this.successors = successors;
+        this.outputs = outputs;
+
+        inputIndex = new HashMap<>();
+        for (int i = 0; i < numInputs; i++) {
+            inputIndex.put(inputs.get(i), i);
+        }
+    }
+
+    /**
+     * Create a snapshot of a hypothesis. States are numbered in breadth-first order from the initial state, so the
+     * initial state is always 0. Only states reachable with the given inputs are included.
+     */
+    public static <S, I, T, O> CompactHypothesis<I, O> create(MealyMachine<S, I, T, O> hypothesis, Collection<? extends I> inputs) {
+        List<I> inputList = new ArrayList<>(inputs);
+        int numInputs = inputList.size();
+
+        Map<S, Integer> stateIds = new HashMap<>();
+        List<S> states = new ArrayList<>();
+        S init = hypothesis.getInitialState();
+        stateIds.put(init, 0);
+        states.add(init);
+
+        List<Integer> succList = new ArrayList<>();
+        List<Object> outList = new ArrayList<>();
+
+        for (int id = 0; id < states.size(); id++) {
+            S state = states.get(id);
+            for (I input : inputList) {
+                T trans = hypothesis.getTransition(state, input);
+                S succ = hypothesis.getSuccessor(trans);
+                Integer succId = stateIds.get(succ);
+                if (succId == null) {
+                    succId = states.size();
+                    stateIds.put(succ, succId);
+                    states.add(succ);
+                }
+                succList.add(succId);
+                outList.add(hypothesis.getTransitionOutput(trans));
+            }
+        }
+
+        int[] successors = new int[succList.size()];
+        for (int i = 0; i < successors.length; i++) {
+            successors[i] = succList.get(i);
+        }
+
+        return new CompactHypothesis<>(inputList, states.size(), 0, successors, outList.toArray());
+    }
+
+    public List<I> getInputs() {
+        return inputs;
+    }
+
+    public int getInputIndex(I input) {
+        Integer index = inputIndex.get(input);
+        if (index == null)
+            throw new IllegalArgumentException("Unknown input symbol: " + input);
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int numInputs() {
+        return numInputs;
+    }
+
+    public int getInitialState() {
+        return initialState;
+    }
+
+    public int getSuccessor(int state, int input) {
+        return successors[state * numInputs + input];
+    }
+
+    @SuppressWarnings("unchecked")
+    public O getOutput(int state, int input) {
+        return (O) outputs[state * numInputs + input];
+    }
+
+    /**
+     * @return the state reached from the given state by reading the word
+     */
+    public int getState(int state, Iterable<? extends I> word) {
+        for (I input : word) {
+            state = getSuccessor(state, getInputIndex(input));
+        }
+        return state;
+    }
+
+    /**
+     * Read the word from the given state and append the produced outputs.
+     *
+     * @return the state reached after reading the word
+     */
+    public int appendOutputs(int state, Iterable<? extends I> word, WordBuilder<O> out) {
+        for (I input : word) {
+            int i = getInputIndex(input);
+            out.append(getOutput(state, i));
+            state = getSuccessor(state, i);
+        }
+        return state;
+    }
+
+    /**
+     * @return the output produced when reading the word from the initial state
+     */
+    public Word<O> computeOutput(Iterable<? extends I> word) {
+        WordBuilder<O> out = new WordBuilder<>();
+        appendOutputs(initialState, word, out);
+        return out.toWord();
+    }
+
+    /**
+     * @return a copy of the snapshot as a mutable Mealy machine over the given alphabet, which has to contain the same
+     * symbols as the inputs of the snapshot
+     */
+    public CompactMealy<I, O> toMealy(Alphabet<I> alphabet) {
+        CompactMealy<I, O> result = new CompactMealy<>(alphabet);
+        result.addInitialState();
+        for (int i = 1; i < size; i++) {
+            result.addState();
+        }
+
+        for (int state = 0; state < size; state++) {
+            for (int i = 0; i < numInputs; i++) {
+                result.addTransition(state, inputs.get(i), getSuccessor(state, i), getOutput(state, i));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,234 @@
+package learner;
+
+import de.learnlib.api.EquivalenceOracle;
+import de.learnlib.api.MembershipOracle;
+import de.learnlib.api.SUL;
+import de.learnlib.oracles.DefaultQuery;
+import learner.ModifiedWMethodEQOracle.MealyModifiedWMethodEQOracle;
+import learner.ModifiedWpMethodEQOracle.ModifiedMealyWpMethodEQOracle;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.Word;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Checks that a target still conforms to a reference model, without learning.
+ * <p>
+ * The test suite of the modified W- or Wp-method oracle for the reference model is executed with early abort, so
+ * testing stops at the first output that differs from the reference. With several targets the test prefixes are
+ * divided over them (see {@link TestSuiteOrdering#setShard(int, int)}) and tested in parallel. When one target finds a
+ * deviation, the shared budget is stopped so the others stop as well.
+ */
+public class ConformanceChecker<I, O> {
+
+    private static final Logger log = LoggerFactory.getLogger(ConformanceChecker.class);
+
+    private static final String STOPPED = "Deviation found on another target";
+
+    /**
+     * Creates the oracle generating the test suite, executing its queries on the given oracle.
+     */
+    public interface OracleFactory<I, O> {
+        EquivalenceOracle<MealyMachine<?, I, ?, O>, I, Word<O>> create(MembershipOracle<I, Word<O>> sulOracle, int shard, int shards) throws Exception;
+    }
+
+    private final MealyMachine<?, I, ?, O> reference;
+    private final Collection<? extends I> inputs;
+    private final List<SUL<I, O>> suls;
+    private final Budget budget;
+    private final O sinkOutput;
+
+    private DefaultQuery<I, Word<O>> deviation = null;
+    private String exhausted = null;
+
+    /**
+     * Constructor.
+     *
+     * @param reference  the model the targets should conform to
+     * @param suls       the targets, tested in parallel
+     * @param budget     budget shared by the targets
+     * @param sinkOutput output of the targets for every input after the connection was closed
+     */
+    public ConformanceChecker(MealyMachine<?, I, ?, O> reference, Collection<? extends I> inputs, List<SUL<I, O>> suls, Budget budget, O sinkOutput) {
+        this.reference = reference;
+        this.inputs = inputs;
+        this.suls = suls;
+        this.budget = budget;
+        this.sinkOutput = sinkOutput;
+    }
+
+    /**
+     * Execute the test suite until it is complete, a deviation is found or the budget is exhausted.
+     *
+     * @return true if the targets conform to the reference model
+     */
+    public boolean check(final OracleFactory<I, O> factory) throws Exception {
+        final int shards = suls.size();
+        ExecutorService executor = Executors.newFixedThreadPool(shards, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "conformance-" + ++count);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            final int shard = i;
+            final EarlyAbortOracle<I, O> sulOracle = new EarlyAbortOracle<>(new BudgetSUL<>(suls.get(i), budget), sinkOutput);
+            final EarlyAbortEQOracle<I, O> eqOracle = new EarlyAbortEQOracle<>(factory.create(sulOracle, shard, shards), sulOracle);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    try {
+                        DefaultQuery<I, Word<O>> ce = eqOracle.findCounterExample(reference, inputs);
+                        if (ce != null)
+                            deviationFound(ce);
+                    } catch (Budget.ExhaustedException e) {
+                        budgetExhausted(e.getMessage());
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            budget.stop("Conformance check failed");
+            throw new Exception("Conformance check failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return deviation == null && exhausted == null;
+    }
+
+    private synchronized void deviationFound(DefaultQuery<I, Word<O>> ce) {
+        // Keep the shortest deviation if several targets find one at the same time
+        if (deviation == null || ce.getInput().length() < deviation.getInput().length())
+            deviation = ce;
+        budget.stop(STOPPED);
+    }
+
+    private synchronized void budgetExhausted(String message) {
+        if (!message.equals(STOPPED) && exhausted == null)
+            exhausted = message;
+    }
+
+    /**
+     * @return the trace on which a target deviated from the reference model, or null
+     */
+    public synchronized DefaultQuery<I, Word<O>> getDeviation() {
+        return deviation;
+    }
+
+    /**
+     * @return the reason the budget was exhausted before the test suite was complete, or null
+     */
+    public synchronized String getExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Run the conformance mode of the configuration: the target is tested against conform_model, and the result is
+     * written to status.properties in the output directory. If a target fails, for instance because it cannot be
+     * reset, the status is error.
+     *
+     * @return true if the target conforms to the model
+     */
+    public static boolean run(final TLSConfig config) throws Exception {
+        if (config.conform_model == null)
+            throw new Exception("No reference model (conform_model) for conformance checking");
+        CompactMealy<String, String> reference = ModelFile.read(config.conform_model);
+        List<String> inputs = new ArrayList<>(reference.getInputAlphabet());
+
+        if (!config.eqtest.equalsIgnoreCase("modifiedwmethod") && !config.eqtest.equalsIgnoreCase("modifiedwpmethod"))
+            throw new Exception("Unknown conformance test: " + config.eqtest);
+        log.info("Checking conformance to " + config.conform_model + " (" + reference.size() + " states) using " + config.eqtest + " with depth " + config.max_depth + " on " + config.conform_suls + " targets");
+
+        Budget budget = new Budget(config.budget_queries, config.budget_steps, config.budget_time * 1000, 0, 0, 0);
+        Properties status = new Properties();
+        List<TLSSUL> tlsSuls = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        boolean conforms = false;
+        try {
+            List<SUL<String, String>> suls = new ArrayList<>();
+            for (int i = 0; i < config.conform_suls; i++) {
+                TLSSUL sul = new TLSSUL(config, config.port + i);
+                tlsSuls.add(sul);
+                suls.add(sul);
+            }
+
+            ConformanceChecker<String, String> checker = new ConformanceChecker<>(reference, inputs, suls, budget, "ConnectionClosed");
+            conforms = checker.check(new OracleFactory<String, String>() {
+                @Override
+                public EquivalenceOracle<MealyMachine<?, String, ?, String>, String, Word<String>> create(MembershipOracle<String, Word<String>> sulOracle, int shard, int shards) throws Exception {
+                    TestSuiteOrdering<String> ordering = new TestSuiteOrdering<>(TestSuiteOrdering.parseHeuristics(config.eqtest_order), config.eqtest_sample, config.seed);
+                    ordering.setShard(shard, shards);
+                    if (config.eqtest.equalsIgnoreCase("modifiedwmethod")) {
+                        MealyModifiedWMethodEQOracle<String, String> wOracle = new MealyModifiedWMethodEQOracle<>(config.max_depth, sulOracle);
+                        wOracle.setTestSuiteOrdering(ordering.isDefault() ? null : ordering);
+                        return wOracle;
+                    } else {
+                        // No maximum number of states, so the depth is not derived from the size of the model
+                        ModifiedMealyWpMethodEQOracle<String, String> wpOracle = new ModifiedMealyWpMethodEQOracle<>(config.max_depth, 0, sulOracle);
+                        wpOracle.setTestSuiteOrdering(ordering.isDefault() ? null : ordering);
+                        return wpOracle;
+                    }
+                }
+            });
+
+            DefaultQuery<String, Word<String>> deviation = checker.getDeviation();
+            if (deviation != null) {
+                Word<String> expected = reference.computeOutput(deviation.getInput());
+                log.info("Target does not conform to the reference model: " + deviation.getInput());
+                log.info("  target:    " + deviation.getOutput());
+                log.info("  reference: " + expected);
+                status.setProperty("status", "fail");
+                status.setProperty("input", deviation.getInput().toString());
+                status.setProperty("output", deviation.getOutput().toString());
+                status.setProperty("expected", expected.toString());
+            } else if (checker.getExhausted() != null) {
+                log.info("Conformance check incomplete: " + checker.getExhausted());
+                status.setProperty("status", "budget_exhausted");
+                status.setProperty("budget", checker.getExhausted());
+            } else {
+                log.info("Target conforms to the reference model");
+                status.setProperty("status", "pass");
+            }
+        } catch (Exception e) {
+            // For instance a target that could not be started or reset, which says nothing about conformance
+            log.error("Conformance check failed", e);
+            status.setProperty("status", "error");
+            status.setProperty("error", String.valueOf(e.getCause() != null ? e.getCause() : e));
+        } finally {
+            for (TLSSUL sul : tlsSuls) {
+                sul.tls.close();
+            }
+        }
+        long time = System.currentTimeMillis() - start;
+
+        log.info("Conformance check took " + time / 1000 + " s, " + budget.getQueries() + " queries, " + budget.getSteps() + " steps");
+        status.setProperty("queries", Long.toString(budget.getQueries()));
+        status.setProperty("steps", Long.toString(budget.getSteps()));
+        status.setProperty("time", Long.toString(time));
+
+        new File(config.output_dir).mkdirs();
+        try (FileOutputStream out = new FileOutputStream(config.output_dir + "/status.properties")) {
+            status.store(out, "Conformance status");
+        }
+        return conforms;
+    }
+}
@@ -0,0 +1,75 @@
+package learner;
+
+import net.automatalib.words.Word;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Average time taken by the target for a reset and for every input symbol, measured by {@link TimingSUL}.
+ * <p>
+ * The cost of symbols differs a lot for TLS targets: key exchange messages pay for key generation, inputs the target
+ * does not respond to wait for the receive timeout, and a reset may restart the target. The estimates are used to
+ * test cheap words first and to spread expensive words over several SULs.
+ */
+public class CostModel<I> {
+
+    private static class Average {
+        long total;
+        long count;
+
+        synchronized void add(long nanos) {
+            total += nanos;
+            count++;
+        }
+
+        synchronized double get() {
+            return count == 0 ? -1 : (double) total / count;
+        }
+    }
+
+    private final Average reset = new Average();
+    private final Average steps = new Average();
+    private final Map<I, Average> symbols = new ConcurrentHashMap<>();
+
+    public void recordReset(long nanos) {
+        reset.add(nanos);
+    }
+
+    public void recordStep(I input, long nanos) {
+        Average average = symbols.get(input);
+        if (average == null) {
+            symbols.putIfAbsent(input, new Average());
+            average = symbols.get(input);
+        }
+        average.add(nanos);
+        steps.add(nanos);
+    }
+
+    /**
+     * @return the estimated time in nanoseconds to reset the target and execute the word, symbols that were not
+     * measured yet are estimated by the average over all symbols
+     */
+    public double estimate(Word<I> word) {
+        double stepAverage = Math.max(0, steps.get());
+        double cost = Math.max(0, reset.get());
+        for (I input : word) {
+            Average average = symbols.get(input);
+            double symbolAverage = average != null ? average.get() : -1;
+            cost += symbolAverage >= 0 ? symbolAverage : stepAverage;
+        }
+        return cost;
+    }
+
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder("Average cost: reset " + format(reset.get()));
+        for (Map.Entry<I, Average> entry : symbols.entrySet()) {
+            sb.append(", ").append(entry.getKey()).append(" ").append(format(entry.getValue().get()));
+        }
+        return sb.toString();
+    }
+
+    private static String format(double nanos) {
+        return nanos < 0 ? "unknown" : String.format("%.1f ms", nanos / 1000000);
+    }
+}
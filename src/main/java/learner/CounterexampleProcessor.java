@@ -0,0 +1,149 @@
+package learner;
+
+import de.learnlib.api.MembershipOracle;
+import de.learnlib.oracles.DefaultQuery;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Shortens counterexamples before they are used to refine the hypothesis.
+ * <p>
+ * Every prefix of a long counterexample ends up in the observation table with the classic L* handler, so a shorter
+ * counterexample saves many membership queries in the next round.
+ */
+public class CounterexampleProcessor<I, O> {
+
+    private static final Logger log = LoggerFactory.getLogger(CounterexampleProcessor.class);
+
+    public enum Stage {
+        // Cut the counterexample after the first output that differs from the hypothesis (no queries needed)
+        PREFIX,
+        // Remove parts of the counterexample that loop back to the same hypothesis state, if the result is still a
+        // counterexample (one query per attempt)
+        LOOPS
+    }
+
+    private final MembershipOracle<I, Word<O>> sulOracle;
+    private final List<Stage> stages;
+
+    private int queries = 0;
+
+    public CounterexampleProcessor(MembershipOracle<I, Word<O>> sulOracle, List<Stage> stages) {
+        this.sulOracle = sulOracle;
+        this.stages = new ArrayList<>(stages);
+    }
+
+    public static List<Stage> parseStages(String value) throws Exception {
+        List<Stage> result = new ArrayList<>();
+        for (String name : value.trim().split(" ")) {
+            if (name.isEmpty() || name.equalsIgnoreCase("none"))
+                continue;
+
+            boolean found = false;
+            for (Stage stage : Stage.values()) {
+                if (stage.name().equalsIgnoreCase(name)) {
+                    result.add(stage);
+                    found = true;
+                }
+            }
+
+            if (!found)
+                throw new Exception("Unknown counterexample processing stage: " + name);
+        }
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return stages.isEmpty();
+    }
+
+    /**
+     * Apply all stages to a counterexample for the given hypothesis.
+     *
+     * @return a counterexample for the hypothesis that is at most as long as the original one
+     */
+    public DefaultQuery<I, Word<O>> process(MealyMachine<?, I, ?, O> hypothesis, DefaultQuery<I, Word<O>> ce) {
+        // Only the output of the suffix is known, make sure the output of the whole input is available
+        if (!ce.getPrefix().isEmpty()) {
+            DefaultQuery<I, Word<O>> query = new DefaultQuery<>(ce.getInput());
+            sulOracle.processQueries(Collections.singleton(query));
+            ce = query;
+        }
+
+        for (Stage stage : stages) {
+            int length = ce.getInput().length();
+            queries = 0;
+
+            switch (stage) {
+                case PREFIX:
+                    ce = trimPrefix(hypothesis, ce);
+                    break;
+                case LOOPS:
+                    ce = removeLoops(hypothesis, ce);
+                    break;
+            }
+
+            log.info("Counterexample processing " + stage.name().toLowerCase() + ": length " + length + " -> " + ce.getInput().length() + " using " + queries + " queries");
+        }
+
+        return ce;
+    }
+
+    private DefaultQuery<I, Word<O>> trimPrefix(MealyMachine<?, I, ?, O> hypothesis, DefaultQuery<I, Word<O>> ce) {
+        Word<O> hypOutput = hypothesis.computeOutput(ce.getInput());
+        Word<O> output = ce.getOutput();
+
+        for (int i = 0; i < output.length() && i < hypOutput.length(); i++) {
+            if (!Objects.equals(output.getSymbol(i), hypOutput.getSymbol(i))) {
+                DefaultQuery<I, Word<O>> result = new DefaultQuery<>(ce.getInput().prefix(i + 1));
+                result.answer(output.prefix(i + 1));
+                return result;
+            }
+        }
+        return ce;
+    }
+
+    private <S> DefaultQuery<I, Word<O>> removeLoops(MealyMachine<S, I, ?, O> hypothesis, DefaultQuery<I, Word<O>> ce) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            Word<I> input = ce.getInput();
+            List<S> states = new ArrayList<>(input.length() + 1);
+            S state = hypothesis.getInitialState();
+            states.add(state);
+            for (I symbol : input) {
+                state = hypothesis.getSuccessor(state, symbol);
+                states.add(state);
+            }
+
+            // Try to cut out the longest loop starting at every position
+            for (int i = 0; i < input.length() && !changed; i++) {
+                for (int j = input.length(); j > i; j--) {
+                    if (!states.get(i).equals(states.get(j)) || (i == 0 && j == input.length()))
+                        continue;
+
+                    WordBuilder<I> wb = new WordBuilder<>();
+                    wb.append(input.prefix(i)).append(input.subWord(j));
+                    Word<I> candidate = wb.toWord();
+
+                    DefaultQuery<I, Word<O>> query = new DefaultQuery<>(candidate);
+                    sulOracle.processQueries(Collections.singleton(query));
+                    queries++;
+
+                    if (!Objects.equals(hypothesis.computeOutput(candidate), query.getOutput())) {
+                        ce = trimPrefix(hypothesis, query);
+                        changed = true;
+                    }
+                    break;
+                }
+            }
+        }
+        return ce;
+    }
+}
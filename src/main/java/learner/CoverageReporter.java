@@ -0,0 +1,12 @@
+package learner;
+
+/**
+ * Equivalence oracle that can report how much of its test suite was executed in the last round.
+ */
+public interface CoverageReporter {
+
+    /**
+     * @return a description of the coverage of the last round, or null if no round was executed yet
+     */
+    String getCoverage();
+}
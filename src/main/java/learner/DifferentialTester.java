@@ -0,0 +1,312 @@
+package learner;
+
+import de.learnlib.api.SUL;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.util.automata.Automata;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Executes the same test words on two targets in lockstep, without learning, and reports where their outputs differ.
+ * <p>
+ * Every input is sent to both targets at the same time, so a test word takes as long as it takes on the slower target.
+ * A word is stopped at the first input with different outputs, and later words with this prefix are skipped, so every
+ * difference is reported once with its shortest trace. In the same way, a word is stopped once both targets closed the
+ * connection, and later words with this prefix are skipped, as nothing can happen anymore.
+ * <p>
+ * The words are either the W-method test suite of a model (transition cover, all words up to the maximum depth, and
+ * characterizing set), or random walks. Without a model, the W-method test suite contains all words up to the maximum
+ * depth plus one. The middle parts are generated depth-first while testing, and middle parts extending a stopped word
+ * are not generated at all.
+ */
+public class DifferentialTester<I, O> {
+
+    private static final Logger log = LoggerFactory.getLogger(DifferentialTester.class);
+
+    /**
+     * Shortest trace on which the targets differ, with the outputs of both.
+     */
+    public static class Difference<I, O> {
+        public final Word<I> input;
+        public final Word<O> output1;
+        public final Word<O> output2;
+        public final long time;
+
+        Difference(Word<I> input, Word<O> output1, Word<O> output2, long time) {
+            this.input = input;
+            this.output1 = output1;
+            this.output2 = output2;
+            this.time = time;
+        }
+    }
+
+    private final SUL<I, O> sul1;
+    private final SUL<I, O> sul2;
+    private final ExecutorService executor;
+    private final List<Difference<I, O>> differences = new ArrayList<>();
+    private final Set<Word<I>> differingPrefixes = new HashSet<>();
+    private final Set<Word<I>> closedPrefixes = new HashSet<>();
+
+    private long maxTime = 0;
+    private long start;
+    private long words = 0;
+    private long steps = 0;
+    private long skipped = 0;
+
+    public DifferentialTester(SUL<I, O> sul1, SUL<I, O> sul2) {
+        this.sul1 = sul1;
+        this.sul2 = sul2;
+        this.executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "differential-" + ++count);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param maxTime stop testing after this time in ms (0 for no limit)
+     */
+    public void setMaxTime(long maxTime) {
+        this.maxTime = maxTime;
+    }
+
+    /**
+     * Execute the W-method test suite of the model.
+     *
+     * @param model    model of one of the targets, or null to use a model with a single state
+     * @param maxDepth maximum length of the words between the transition cover and the characterizing set
+     */
+    public List<Difference<I, O>> testWMethod(MealyMachine<?, I, ?, O> model, Collection<? extends I> inputs, int maxDepth) throws Exception {
+        start = System.currentTimeMillis();
+        List<Word<I>> transitionCover;
+        List<Word<I>> characterizingSet;
+        if (model != null) {
+            transitionCover = Automata.transitionCover(model, inputs);
+            characterizingSet = Automata.characterizingSet(model, inputs);
+        } else {
+            transitionCover = new ArrayList<>();
+            for (I input : inputs) {
+                transitionCover.add(Word.fromLetter(input));
+            }
+            characterizingSet = new ArrayList<>();
+        }
+        if (characterizingSet.isEmpty())
+            characterizingSet.add(Word.<I>epsilon());
+        log.info("W-method test suite: " + transitionCover.size() + " prefixes, middle parts up to length " + maxDepth + ", " + characterizingSet.size() + " suffixes");
+
+        // Shorter middle parts first, so the shortest differences are found first
+        for (int depth = 0; depth <= maxDepth; depth++) {
+            for (Word<I> prefix : transitionCover) {
+                if (isStopped(prefix, 1))
+                    continue;
+                if (!testMiddles(new WordBuilder<>(prefix), inputs, depth, characterizingSet))
+                    return finish();
+            }
+        }
+        return finish();
+    }
+
+    /*
+     * Test the words with all middle parts of the given length after the word, skipping middle parts that extend a
+     * stopped word
+     *
+     * @return false if the maximum time is exceeded
+     */
+    private boolean testMiddles(WordBuilder<I> word, Collection<? extends I> inputs, int length, List<Word<I>> suffixes) throws Exception {
+        if (length == 0) {
+            Word<I> middle = word.toWord();
+            for (Word<I> suffix : suffixes) {
+                if (timeExceeded())
+                    return false;
+                test(middle.concat(suffix));
+            }
+            return true;
+        }
+
+        for (I input : inputs) {
+            word.append(input);
+            Word<I> middle = word.toWord();
+            boolean inTime = isStopped(middle, middle.length()) || testMiddles(word, inputs, length - 1, suffixes);
+            word.truncate(word.size() - 1);
+            if (!inTime)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Execute random walks, restarting with the given probability after every step.
+     */
+    public List<Difference<I, O>> testRandomWalk(List<? extends I> inputs, double restartProbability, long maxSteps, Random random) throws Exception {
+        start = System.currentTimeMillis();
+        long walked = 0;
+        while (walked < maxSteps && !timeExceeded()) {
+            WordBuilder<I> word = new WordBuilder<>();
+            do {
+                word.append(inputs.get(random.nextInt(inputs.size())));
+                walked++;
+            } while (random.nextDouble() >= restartProbability && walked < maxSteps);
+            test(word.toWord());
+        }
+        return finish();
+    }
+
+    private boolean timeExceeded() {
+        return maxTime > 0 && System.currentTimeMillis() - start > maxTime;
+    }
+
+    /*
+     * Execute the word on both targets in lockstep, up to the first difference
+     */
+    private void test(Word<I> word) throws Exception {
+        if (isStopped(word, 1)) {
+            skipped++;
+            return;
+        }
+
+        words++;
+        both(new Callable<O>() {
+            @Override
+            public O call() {
+                sul1.reset();
+                return null;
+            }
+        }, new Callable<O>() {
+            @Override
+            public O call() {
+                sul2.reset();
+                return null;
+            }
+        });
+
+        WordBuilder<O> output1 = new WordBuilder<>(word.length());
+        WordBuilder<O> output2 = new WordBuilder<>(word.length());
+        for (int i = 0; i < word.length(); i++) {
+            final I input = word.getSymbol(i);
+            List<O> outputs = both(new Callable<O>() {
+                @Override
+                public O call() {
+                    return sul1.step(input);
+                }
+            }, new Callable<O>() {
+                @Override
+                public O call() {
+                    return sul2.step(input);
+                }
+            });
+            steps++;
+            output1.append(outputs.get(0));
+            output2.append(outputs.get(1));
+
+            if (!Objects.equals(outputs.get(0), outputs.get(1))) {
+                Difference<I, O> difference = new Difference<>(word.prefix(i + 1), output1.toWord(), output2.toWord(), System.currentTimeMillis() - start);
+                differences.add(difference);
+                differingPrefixes.add(difference.input);
+                log.info("Difference " + differences.size() + " after " + difference.time / 1000 + " s: " + difference.input);
+                log.info("  target 1: " + difference.output1);
+                log.info("  target 2: " + difference.output2);
+                return;
+            }
+            if (TestSuiteRunner.isConnectionClosed(outputs.get(0)) && TestSuiteRunner.isConnectionClosed(outputs.get(1))) {
+                closedPrefixes.add(word.prefix(i + 1));
+                return;
+            }
+        }
+    }
+
+    /*
+     * Check whether a word was stopped at a prefix of at least the given length, after a difference or after both
+     * targets closed the connection
+     */
+    private boolean isStopped(Word<I> word, int minLength) {
+        for (int i = minLength; i <= word.length(); i++) {
+            Word<I> prefix = word.prefix(i);
+            if (differingPrefixes.contains(prefix) || closedPrefixes.contains(prefix))
+                return true;
+        }
+        return false;
+    }
+
+    private List<O> both(Callable<O> call1, Callable<O> call2) throws Exception {
+        Future<O> future1 = executor.submit(call1);
+        Future<O> future2 = executor.submit(call2);
+        try {
+            return Arrays.asList(future1.get(), future2.get());
+        } catch (ExecutionException e) {
+            throw new Exception("Target failed", e.getCause());
+        }
+    }
+
+    private List<Difference<I, O>> finish() {
+        log.info(getSummary());
+        return differences;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public String getSummary() {
+        return "Differential testing: " + words + " words, " + steps + " steps, " + skipped + " words skipped, " + differences.size() + " differences in " + (System.currentTimeMillis() - start) / 1000 + " s";
+    }
+
+    /**
+     * Run the differential mode of the configuration: the targets of the configuration and of differential_config are
+     * compared, and the differences are written to differences.txt in the output directory.
+     */
+    public static void run(TLSConfig config) throws Exception {
+        if (config.differential_config == null)
+            throw new Exception("No second target configuration (differential_config) for differential testing");
+        TLSConfig config2 = new TLSConfig(config.differential_config);
+
+        CompactMealy<String, String> model = null;
+        if (config.differential_model != null)
+            model = ModelFile.read(config.differential_model);
+
+        log.info("Comparing the target with the target of " + config.differential_config + " using " + config.differential_tests + " tests");
+        TLSSUL sul1 = new TLSSUL(config);
+        TLSSUL sul2 = new TLSSUL(config2);
+        DifferentialTester<String, String> tester = new DifferentialTester<>(sul1, sul2);
+        tester.setMaxTime(config.budget_time * 1000);
+
+        List<Difference<String, String>> differences;
+        try {
+            if (config.differential_tests.equals("randomwalk")) {
+                differences = tester.testRandomWalk(new ArrayList<>(config.alphabet), config.restart_probability, config.max_steps, new Random(config.seed));
+            } else {
+                differences = tester.testWMethod(model, config.alphabet, config.max_depth);
+            }
+        } finally {
+            tester.shutdown();
+            sul1.tls.close();
+            sul2.tls.close();
+        }
+
+        new File(config.output_dir).mkdirs();
+        write(differences, config.output_dir + "/differences.txt");
+    }
+
+    private static void write(List<Difference<String, String>> differences, String filename) throws IOException {
+        try (PrintStream out = new PrintStream(filename)) {
+            for (Difference<String, String> difference : differences) {
+                out.println(difference.input);
+                out.println("  target 1: " + difference.output1);
+                out.println("  target 2: " + difference.output2);
+            }
+        }
+    }
+}
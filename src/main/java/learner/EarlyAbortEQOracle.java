@@ -0,0 +1,45 @@
+package learner;
+
+import de.learnlib.api.EquivalenceOracle;
+import de.learnlib.oracles.DefaultQuery;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+
+import java.util.Collection;
+
+/**
+ * Equivalence oracle that lets another oracle search for a counterexample, while its queries are executed by an
+ * {@link EarlyAbortOracle}. The first output that differs from the hypothesis ends the search, the counterexample is
+ * the executed part of that query.
+ */
+public class EarlyAbortEQOracle<I, O> implements EquivalenceOracle.MealyEquivalenceOracle<I, O> {
+
+    private final EquivalenceOracle<MealyMachine<?, I, ?, O>, I, Word<O>> eqOracle;
+    private final EarlyAbortOracle<I, O> sulOracle;
+
+    /**
+     * Constructor.
+     *
+     * @param eqOracle  the oracle generating the tests
+     * @param sulOracle the oracle at the bottom of the oracle chain used by eqOracle
+     */
+    public EarlyAbortEQOracle(EquivalenceOracle<MealyMachine<?, I, ?, O>, I, Word<O>> eqOracle, EarlyAbortOracle<I, O> sulOracle) {
+        this.eqOracle = eqOracle;
+        this.sulOracle = sulOracle;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public DefaultQuery<I, Word<O>> findCounterExample(MealyMachine<?, I, ?, O> hypothesis, Collection<? extends I> inputs) {
+        sulOracle.setHypothesis(CompactHypothesis.create(hypothesis, inputs));
+        try {
+            return eqOracle.findCounterExample(hypothesis, inputs);
+        } catch (EarlyAbortOracle.CounterexampleFound e) {
+            DefaultQuery<I, Word<O>> ce = new DefaultQuery<>((Word<I>) e.getInput());
+            ce.answer((Word<O>) e.getOutput());
+            return ce;
+        } finally {
+            sulOracle.setHypothesis(null);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package learner;
+
+import de.learnlib.api.SUL;
+import de.learnlib.oracles.SULOracle;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+
+/**
+ * Oracle for equivalence queries that compares every output of the target with the hypothesis as soon as it is
+ * received.
+ * <p>
+ * On the first difference the query is aborted and a {@link CounterexampleFound} exception carrying the executed part
+ * of the query is thrown, which is caught by {@link EarlyAbortEQOracle}. After the target closed the connection the
+ * remaining outputs are filled in with the sink output, without interacting with the target.
+ */
+public class EarlyAbortOracle<I, O> extends SULOracle<I, O> {
+
+    private static final Logger log = LoggerFactory.getLogger(EarlyAbortOracle.class);
+
+    /**
+     * Thrown when the output of the target differs from the hypothesis.
+     */
+    public static class CounterexampleFound extends RuntimeException {
+        private final Word<?> input;
+        private final Word<?> output;
+
+        public CounterexampleFound(Word<?> input, Word<?> output) {
+            super("Counterexample found: " + input + " / " + output);
+            this.input = input;
+            this.output = output;
+        }
+
+        public Word<?> getInput() {
+            return input;
+        }
+
+        public Word<?> getOutput() {
+            return output;
+        }
+    }
+
+    private final SUL<I, O> sul;
+    private final O sinkOutput;
+    private CompactHypothesis<I, O> hypothesis = null;
+
+    int nrQueries = 0;
+    private long steps = 0;
+    private long skippedSteps = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param sul        the target
+     * @param sinkOutput output of the target for every input after the connection was closed
+     */
+    public EarlyAbortOracle(SUL<I, O> sul, O sinkOutput) {
+        super(sul);
+        this.sul = sul;
+        this.sinkOutput = sinkOutput;
+    }
+
+    /**
+     * @param hypothesis the hypothesis to compare outputs with, or null to execute queries completely
+     */
+    public void setHypothesis(CompactHypothesis<I, O> hypothesis) {
+        this.hypothesis = hypothesis;
+    }
+
+    @Override
+    public Word<O> answerQuery(Word<I> prefix, Word<I> suffix) {
+        nrQueries++;
+        log.info("Equivalence query {}: {} | {}", nrQueries, prefix, suffix);
+
+        Word<I> input = prefix.concat(suffix);
+        WordBuilder<O> output = new WordBuilder<>(input.length());
+        boolean closed = false;
+        int state = hypothesis == null ? 0 : hypothesis.getInitialState();
+
+        sul.reset();
+        for (I symbol : input) {
+            O out;
+            if (closed) {
+                out = sinkOutput;
+                skippedSteps++;
+            } else {
+                out = sul.step(symbol);
+                steps++;
+                closed = TestSuiteRunner.isConnectionClosed(out);
+            }
+            output.append(out);
+
+            if (hypothesis != null) {
+                int i = hypothesis.getInputIndex(symbol);
+                if (!Objects.equals(out, hypothesis.getOutput(state, i))) {
+                    Word<I> executed = input.prefix(output.size());
+                    log.info("Aborted after {} of {} inputs: {}", output.size(), input.length(), output.toWord());
+                    skippedSteps += input.length() - output.size();
+                    throw new CounterexampleFound(executed, output.toWord());
+                }
+                state = hypothesis.getSuccessor(state, i);
+            }
+        }
+
+        Word<O> answer = output.toWord().subWord(prefix.length());
+        log.info("Answer: {}", answer);
+        return answer;
+    }
+
+    /**
+     * @return the number of steps executed on the target
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return the number of steps not executed on the target because of a difference or a closed connection
+     */
+    public long getSkippedSteps() {
+        return skippedSteps;
+    }
+}
@@ -0,0 +1,502 @@
+package learner;
+
+import de.learnlib.api.SUL;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.util.automata.Automata;
+import net.automatalib.words.Word;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tlstestservice.Mutator;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stateful fuzzing guided by a learned model.
+ * <p>
+ * Every session moves the target to a state of the model with its access sequence and then sends one input with a
+ * mutated message or record (see {@link RandomMutator}). The following are recorded as findings:
+ * <ul>
+ * <li>crash: the target process was killed by a signal, or could not be reached for the next session</li>
+ * <li>hang: the mutated input took longer than the hang time, or the target did not answer a new connection within
+ * the hang time afterwards</li>
+ * <li>unexpected output: an output that does not occur in the model, once per state</li>
+ * </ul>
+ * Reads from the target time out after a short time (the receive timeout of the configuration), so a hanging target
+ * does not block the mutated input but answers it with an empty output. Therefore, if the mutated input was answered
+ * with an empty output, an exception or only after half the hang time, the target is reset and sent an input of the
+ * initial state until it gives the output of the model, for at most the hang time. After other outputs, the reset of
+ * the next session checks that the target still accepts connections.
+ * <p>
+ * Sessions run concurrently on several targets. Session n only depends on the seed and n, so every finding can be
+ * replayed by its session number. Throughput is logged in executions (sessions) per second.
+ */
+public class Fuzzer {
+
+    private static final Logger log = LoggerFactory.getLogger(Fuzzer.class);
+
+    private static final long REPORT_INTERVAL = 10000;
+
+    /**
+     * A target that can send mutated messages.
+     */
+    public interface Target extends SUL<String, String> {
+        void setMutator(Mutator mutator);
+
+        /**
+         * @return true if the target crashed since the last reset
+         */
+        boolean hasCrashed();
+
+        /**
+         * Start the target again after it crashed or hung.
+         */
+        void restart() throws Exception;
+    }
+
+    public enum Kind {
+        CRASH, HANG, UNEXPECTED
+    }
+
+    public static class Finding {
+        public final Kind kind;
+        public final long session;
+        public final Word<String> prefix;
+        public final String input;
+        public final String mutation;
+        public final String output;
+        public final long time;
+
+        Finding(Kind kind, long session, Word<String> prefix, String input, String mutation, String output, long time) {
+            this.kind = kind;
+            this.session = session;
+            this.prefix = prefix;
+            this.input = input;
+            this.mutation = mutation;
+            this.output = output;
+            this.time = time;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " session " + session + " after " + time / 1000 + " s: " + prefix + " | " + input + " / " + output + ", " + mutation;
+        }
+    }
+
+    /*
+     * Executed part of a session, to report a crash found at the start of the next session
+     */
+    private static class Session {
+        final long number;
+        final Word<String> prefix;
+        final String input;
+        final String mutation;
+        // A crash or hang was recorded, the target has to be restarted
+        final boolean restart;
+
+        Session(long number, Word<String> prefix, String input, String mutation, boolean restart) {
+            this.number = number;
+            this.prefix = prefix;
+            this.input = input;
+            this.mutation = mutation;
+            this.restart = restart;
+        }
+    }
+
+    private final CompactMealy<String, String> model;
+    private final List<String> inputs;
+    private final List<Word<String>> prefixes = new ArrayList<>();
+    private final List<Word<String>> expectedOutputs = new ArrayList<>();
+    private final Set<String> modelOutputs = new HashSet<>();
+    private String probeInput = null;
+    private String probeOutput = null;
+    private final List<Target> targets;
+    private final long seed;
+
+    private long hangTime = 5000;
+    private long maxSessions = 0;
+    private long maxTime = 0;
+    private PrintStream findingsOut = null;
+
+    private final List<Finding> findings = new ArrayList<>();
+    private final Set<String> reported = new HashSet<>();
+    private final AtomicLong nextSession = new AtomicLong();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong steps = new AtomicLong();
+    private final AtomicLong diverged = new AtomicLong();
+    private volatile boolean stopped = false;
+    private long start;
+    private long lastReport;
+    private long lastExecutions;
+
+    /**
+     * Constructor.
+     *
+     * @param model    the learned model
+     * @param prefixes inputs leading to the states to fuzz, or null to fuzz all states of the model
+     * @param targets  the targets, used concurrently
+     * @param seed     seed of the sessions
+     */
+    public Fuzzer(CompactMealy<String, String> model, List<Word<String>> prefixes, List<Target> targets, long seed) {
+        this.model = model;
+        this.inputs = new ArrayList<>(model.getInputAlphabet());
+        this.targets = targets;
+        this.seed = seed;
+        this.start = System.currentTimeMillis();
+
+        for (Integer state : model.getStates()) {
+            for (String input : inputs) {
+                modelOutputs.add(model.getTransitionOutput(model.getTransition(state, input)));
+            }
+        }
+
+        // Probe with an input the target answers in the initial state, preferably with more than an empty output
+        for (String input : inputs) {
+            String output = model.getOutput(model.getInitialState(), input);
+            if (TestSuiteRunner.isConnectionClosed(output) || (probeInput != null && output.equals("Empty")))
+                continue;
+            probeInput = input;
+            probeOutput = output;
+            if (!output.equals("Empty"))
+                break;
+        }
+
+        // Fuzzing after the connection is closed does not send anything
+        for (Word<String> prefix : prefixes != null ? prefixes : Automata.stateCover(model, inputs)) {
+            Word<String> expected = model.computeOutput(prefix);
+            if (!TestSuiteRunner.isConnectionClosed(expected)) {
+                this.prefixes.add(prefix);
+                this.expectedOutputs.add(expected);
+            }
+        }
+    }
+
+    /**
+     * @param hangTime time in ms after which a mutated input counts as a hang, and within which the target has to
+     *                 answer a new connection afterwards
+     */
+    public void setHangTime(long hangTime) {
+        this.hangTime = hangTime;
+    }
+
+    /**
+     * @param maxSessions stop after this number of sessions (0 for no limit)
+     */
+    public void setMaxSessions(long maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * @param maxTime stop after this time in ms (0 for no limit)
+     */
+    public void setMaxTime(long maxTime) {
+        this.maxTime = maxTime;
+    }
+
+    /**
+     * @param filename file every finding is appended to as soon as it is found
+     */
+    public void setFindingsFile(String filename) throws FileNotFoundException {
+        findingsOut = new PrintStream(new FileOutputStream(filename, true), true);
+    }
+
+    /**
+     * Run sessions on all targets until the maximum number of sessions or time is reached.
+     */
+    public List<Finding> run() throws Exception {
+        if (prefixes.isEmpty())
+            throw new Exception("No states to fuzz in the model");
+        log.info("Fuzzing " + prefixes.size() + " states with " + inputs.size() + " inputs on " + targets.size() + " targets");
+        if (probeInput == null)
+            log.warn("No input of the initial state keeps the connection open, hangs after the mutated input are not detected");
+
+        start = System.currentTimeMillis();
+        lastReport = start;
+        ExecutorService executor = Executors.newFixedThreadPool(targets.size(), new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "fuzzer-" + ++count);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (final Target target : targets) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    fuzz(target);
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            stopped = true;
+            throw new Exception("Fuzzing failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            if (findingsOut != null)
+                findingsOut.close();
+        }
+
+        log.info(getSummary());
+        return getFindings();
+    }
+
+    private void fuzz(Target target) throws Exception {
+        Session previous = null;
+        while (!stopped) {
+            long number = nextSession.getAndIncrement();
+            if ((maxSessions > 0 && number >= maxSessions) || (maxTime > 0 && System.currentTimeMillis() - start > maxTime))
+                break;
+
+            if (previous != null && previous.restart)
+                target.restart();
+            try {
+                target.reset();
+            } catch (RuntimeException e) {
+                // The previous session left the target unreachable
+                if (previous != null && !previous.restart)
+                    record(Kind.CRASH, previous.number, previous.prefix, previous.input, previous.mutation, "Unreachable: " + e.getMessage());
+                target.restart();
+                target.reset();
+            }
+
+            previous = execute(target, number);
+            executions.incrementAndGet();
+            report();
+        }
+    }
+
+    /*
+     * Execute a single session on the target, after it was reset
+     */
+    private Session execute(Target target, long number) {
+        Random random = new Random(seed * 1000003L + number);
+        int index = random.nextInt(prefixes.size());
+        Word<String> prefix = prefixes.get(index);
+        Word<String> expected = expectedOutputs.get(index);
+        String input = inputs.get(random.nextInt(inputs.size()));
+        RandomMutator mutator = new RandomMutator(random, random.nextBoolean());
+
+        for (int i = 0; i < prefix.length(); i++) {
+            String output = target.step(prefix.getSymbol(i));
+            steps.incrementAndGet();
+            if (!Objects.equals(output, expected.getSymbol(i))) {
+                // Not in the intended state, so the mutation would be tested in another state
+                diverged.incrementAndGet();
+                return new Session(number, prefix.prefix(i + 1), "", "not mutated", false);
+            }
+        }
+
+        long stepStart = System.currentTimeMillis();
+        target.setMutator(mutator);
+        String output;
+        try {
+            output = target.step(input);
+        } finally {
+            target.setMutator(null);
+        }
+        long time = System.currentTimeMillis() - stepStart;
+        steps.incrementAndGet();
+
+        String mutation = mutator.getDescription();
+        if (target.hasCrashed()) {
+            record(Kind.CRASH, number, prefix, input, mutation, output);
+            return new Session(number, prefix, input, mutation, true);
+        }
+
+        String probe = hangPlausible(output, time) ? probe(target) : null;
+        if (target.hasCrashed() || (probe != null && probe.startsWith("Unreachable: "))) {
+            record(Kind.CRASH, number, prefix, input, mutation, output + ", then " + (probe != null ? probe : "killed"));
+            return new Session(number, prefix, input, mutation, true);
+        }
+        if (probe != null) {
+            record(Kind.HANG, number, prefix, input, mutation, output + ", then no answer to " + probeInput + " within " + hangTime + " ms (" + probe + ")");
+            return new Session(number, prefix, input, mutation, true);
+        }
+
+        if (time > hangTime)
+            record(Kind.HANG, number, prefix, input, mutation, output + " after " + time + " ms");
+        else if (!modelOutputs.contains(output))
+            recordUnexpected(model.getState(prefix), number, prefix, input, mutation, output);
+        return new Session(number, prefix, input, mutation, false);
+    }
+
+    /*
+     * A hanging target is only probed if the mutated input got no answer, an exception or a late answer. Otherwise the
+     * reset of the next session on the target shows whether it still accepts connections.
+     */
+    private boolean hangPlausible(String output, long time) {
+        return output == null || output.equals("Empty") || output.startsWith("Exception:") || output.contains("Timeout") || time > hangTime / 2;
+    }
+
+    /*
+     * Reset the target and send the probe input until it gives the output of the model, for at most the hang time
+     *
+     * @return null if the target answered, otherwise its last output, or "Unreachable: " and the error if it could not
+     * be reset
+     */
+    private String probe(Target target) {
+        if (probeInput == null)
+            return null;
+
+        long deadline = System.currentTimeMillis() + hangTime;
+        String output;
+        do {
+            try {
+                target.reset();
+            } catch (RuntimeException e) {
+                output = "Unreachable: " + e.getMessage();
+                try {
+                    // Give a restarting target some time to accept connections again
+                    Thread.sleep(Math.min(100, hangTime));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                continue;
+            }
+            output = target.step(probeInput);
+            steps.incrementAndGet();
+            if (Objects.equals(output, probeOutput))
+                return null;
+        } while (System.currentTimeMillis() < deadline && !target.hasCrashed());
+        return output;
+    }
+
+    private synchronized void record(Kind kind, long session, Word<String> prefix, String input, String mutation, String output) {
+        Finding finding = new Finding(kind, session, prefix, input, mutation, output, System.currentTimeMillis() - start);
+        findings.add(finding);
+        log.info("Finding: " + finding);
+        if (findingsOut != null)
+            findingsOut.println(finding);
+    }
+
+    /*
+     * Record an output that does not occur in the model, the first time it is found in this state
+     */
+    private synchronized void recordUnexpected(Integer state, long session, Word<String> prefix, String input, String mutation, String output) {
+        if (reported.add(state + " " + output))
+            record(Kind.UNEXPECTED, session, prefix, input, mutation, output);
+    }
+
+    private synchronized void report() {
+        long now = System.currentTimeMillis();
+        if (now - lastReport < REPORT_INTERVAL)
+            return;
+        long current = executions.get();
+        log.info(String.format("%d executions, %.1f exec/s (%.1f exec/s overall), %d findings", current, 1000.0 * (current - lastExecutions) / (now - lastReport), 1000.0 * current / (now - start), findings.size()));
+        lastReport = now;
+        lastExecutions = current;
+    }
+
+    public synchronized List<Finding> getFindings() {
+        return new ArrayList<>(findings);
+    }
+
+    public String getSummary() {
+        long time = Math.max(1, System.currentTimeMillis() - start);
+        return String.format("Fuzzing: %d executions (%d not reaching their state), %d steps in %d s, %.1f exec/s, %d findings", executions.get(), diverged.get(), steps.get(), time / 1000, 1000.0 * executions.get() / time, getFindings().size());
+    }
+
+    /**
+     * Run the fuzzing mode of the configuration on fuzz_suls targets (on port and the ports following it). The
+     * findings are written to fuzz-findings.txt in the output directory.
+     */
+    public static void run(TLSConfig config) throws Exception {
+        if (config.fuzz_model == null)
+            throw new Exception("No model (fuzz_model) for fuzzing");
+        CompactMealy<String, String> model = ModelFile.read(config.fuzz_model);
+
+        List<Word<String>> prefixes = null;
+        if (config.fuzz_states != null) {
+            prefixes = new ArrayList<>();
+            for (String prefix : config.fuzz_states.split(";")) {
+                prefixes.add(Word.fromList(Arrays.asList(prefix.trim().split(" "))));
+            }
+        }
+
+        List<TLSSUL> suls = new ArrayList<>();
+        List<Target> targets = new ArrayList<>();
+        for (int i = 0; i < config.fuzz_suls; i++) {
+            TLSSUL sul = new TLSSUL(config, config.port + i);
+            suls.add(sul);
+            targets.add(createTarget(sul));
+        }
+
+        Fuzzer fuzzer = new Fuzzer(model, prefixes, targets, config.seed);
+        fuzzer.setHangTime(config.fuzz_hang_time);
+        fuzzer.setMaxTime(config.budget_time * 1000);
+        try {
+            if (config.fuzz_replay >= 0) {
+                log.info("Replaying session " + config.fuzz_replay);
+                targets.get(0).reset();
+                Session session = fuzzer.execute(targets.get(0), config.fuzz_replay);
+                log.info("Session " + session.number + ": " + session.prefix + " | " + session.input + ", " + session.mutation);
+                log.info(fuzzer.getFindings().isEmpty() ? "No finding" : "Finding: " + fuzzer.getFindings().get(0));
+            } else {
+                new File(config.output_dir).mkdirs();
+                fuzzer.setFindingsFile(config.output_dir + "/fuzz-findings.txt");
+                fuzzer.setMaxSessions(config.fuzz_sessions);
+                fuzzer.run();
+            }
+        } finally {
+            for (TLSSUL sul : suls) {
+                sul.tls.close();
+            }
+        }
+    }
+
+    private static Target createTarget(final TLSSUL sul) {
+        return new Target() {
+            @Override
+            public void reset() {
+                try {
+                    sul.tls.reset();
+                } catch (Exception e) {
+                    throw new RuntimeException(e.toString(), e);
+                }
+            }
+
+            @Override
+            public String step(String input) {
+                try {
+                    return sul.tls.processSymbol(input);
+                } catch (Exception e) {
+                    // Responses that cannot be parsed are outputs as well
+                    return "Exception:" + e.getClass().getSimpleName();
+                }
+            }
+
+            @Override
+            public void setMutator(Mutator mutator) {
+                sul.tls.setMutator(mutator);
+            }
+
+            @Override
+            public boolean hasCrashed() {
+                return sul.tls.hasTargetCrashed();
+            }
+
+            @Override
+            public void restart() throws Exception {
+                sul.tls.close();
+                sul.tls.start();
+            }
+        };
+    }
+}
@@ -0,0 +1,307 @@
+package learner;
+
+import de.learnlib.api.LearningAlgorithm;
+import de.learnlib.api.MembershipOracle;
+import de.learnlib.oracles.DefaultQuery;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Kearns-Vazirani style learner for Mealy machines.
+ * <p>
+ * States are kept in a discrimination tree instead of an observation table, so a new state only costs queries for
+ * the discriminators on its path in the tree instead of a full row of suffixes. Counterexamples are analyzed with the
+ * binary search of Rivest and Schapire, which finds a single new state and discriminator using a logarithmic number
+ * of queries in the length of the counterexample.
+ */
+public class KearnsVaziraniMealy<I, O> implements LearningAlgorithm<MealyMachine<?, I, ?, O>, I, Word<O>> {
+
+    private static final Logger log = LoggerFactory.getLogger(KearnsVaziraniMealy.class);
+
+    private static class Node<I, O> {
+        // Inner node: discriminator and children per output of the discriminator
+        Word<I> discriminator;
+        Map<Word<O>, Node<I, O>> children;
+
+        // Leaf: the hypothesis state
+        State<I, O> state;
+
+        boolean isLeaf() {
+            return discriminator == null;
+        }
+    }
+
+    private static class State<I, O> {
+        final int id;
+        final Word<I> accessSequence;
+        Node<I, O> leaf;
+
+        final List<State<I, O>> successors;
+        final List<O> outputs;
+
+        State(int id, Word<I> accessSequence, int numInputs) {
+            this.id = id;
+            this.accessSequence = accessSequence;
+            successors = new ArrayList<>(Collections.<State<I, O>>nCopies(numInputs, null));
+            outputs = new ArrayList<>(Collections.<O>nCopies(numInputs, null));
+        }
+    }
+
+    private final Alphabet<I> alphabet;
+    private final MembershipOracle<I, Word<O>> oracle;
+
+    private final List<State<I, O>> states = new ArrayList<>();
+    private final Deque<State<I, O>> uninitialized = new ArrayDeque<>();
+    private Node<I, O> root;
+
+    private CompactMealy<I, O> hypothesis = null;
+
+    public KearnsVaziraniMealy(Alphabet<I> alphabet, MembershipOracle<I, Word<O>> oracle) {
+        this.alphabet = alphabet;
+        this.oracle = oracle;
+    }
+
+    @Override
+    public void startLearning() {
+        if (root != null)
+            throw new IllegalStateException("Learning has already been started");
+
+        root = new Node<>();
+        createState(Word.<I>epsilon(), root);
+        initializeTransitions();
+    }
+
+    @Override
+    public boolean refineHypothesis(DefaultQuery<I, Word<O>> ce) {
+        boolean refined = false;
+        while (isCounterExample(ce)) {
+            if (!splitState(ce))
+                break;
+            initializeTransitions();
+            refined = true;
+        }
+
+        if (refined) {
+            hypothesis = null;
+            log.info("Hypothesis refined to " + states.size() + " states");
+        }
+        return refined;
+    }
+
+    @Override
+    public MealyMachine<?, I, ?, O> getHypothesisModel() {
+        if (hypothesis == null) {
+            hypothesis = new CompactMealy<>(alphabet);
+            for (State<I, O> state : states) {
+                if (state.id == 0)
+                    hypothesis.addInitialState();
+                else
+                    hypothesis.addState();
+            }
+
+            for (State<I, O> state : states) {
+                for (int i = 0; i < alphabet.size(); i++) {
+                    hypothesis.addTransition(state.id, alphabet.getSymbol(i), state.successors.get(i).id, state.outputs.get(i));
+                }
+            }
+        }
+        return hypothesis;
+    }
+
+    private State<I, O> createState(Word<I> accessSequence, Node<I, O> leaf) {
+        State<I, O> state = new State<>(states.size(), accessSequence, alphabet.size());
+        state.leaf = leaf;
+        leaf.state = state;
+        states.add(state);
+        uninitialized.add(state);
+        return state;
+    }
+
+    /*
+     * Determine outputs and successors of all new states. Sifting the successors can discover more new states.
+     */
+    private void initializeTransitions() {
+        while (!uninitialized.isEmpty()) {
+            List<State<I, O>> batch = new ArrayList<>(uninitialized);
+            uninitialized.clear();
+
+            List<DefaultQuery<I, Word<O>>> queries = new ArrayList<>();
+            List<Word<I>> words = new ArrayList<>();
+            for (State<I, O> state : batch) {
+                for (I input : alphabet) {
+                    queries.add(new DefaultQuery<>(state.accessSequence, Word.fromLetter(input)));
+                    words.add(state.accessSequence.append(input));
+                }
+            }
+            oracle.processQueries(queries);
+
+            List<Node<I, O>> starts = new ArrayList<>(Collections.nCopies(words.size(), root));
+            List<State<I, O>> targets = sift(words, starts);
+
+            int index = 0;
+            for (State<I, O> state : batch) {
+                for (int i = 0; i < alphabet.size(); i++) {
+                    state.outputs.set(i, queries.get(index).getOutput().firstSymbol());
+                    state.successors.set(i, targets.get(index));
+                    index++;
+                }
+            }
+        }
+    }
+
+    /*
+     * Sift words down the discrimination tree, starting at the given nodes. All words on the same level are queried
+     * in one batch. An output not seen before at an inner node creates a new state.
+     */
+    private List<State<I, O>> sift(List<Word<I>> words, List<Node<I, O>> starts) {
+        List<Node<I, O>> current = new ArrayList<>(starts);
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < words.size(); i++) {
+            if (!current.get(i).isLeaf())
+                pending.add(i);
+        }
+
+        while (!pending.isEmpty()) {
+            List<DefaultQuery<I, Word<O>>> queries = new ArrayList<>(pending.size());
+            for (int i : pending) {
+                queries.add(new DefaultQuery<>(words.get(i), current.get(i).discriminator));
+            }
+            oracle.processQueries(queries);
+
+            List<Integer> next = new ArrayList<>();
+            for (int k = 0; k < pending.size(); k++) {
+                int i = pending.get(k);
+                Node<I, O> node = current.get(i);
+                Word<O> outcome = queries.get(k).getOutput();
+
+                Node<I, O> child = node.children.get(outcome);
+                if (child == null) {
+                    child = new Node<>();
+                    node.children.put(outcome, child);
+                    createState(words.get(i), child);
+                }
+
+                current.set(i, child);
+                if (!child.isLeaf())
+                    next.add(i);
+            }
+            pending = next;
+        }
+
+        List<State<I, O>> result = new ArrayList<>(words.size());
+        for (Node<I, O> node : current) {
+            result.add(node.state);
+        }
+        return result;
+    }
+
+    private boolean isCounterExample(DefaultQuery<I, Word<O>> ce) {
+        Word<O> hypOutput = computeOutput(states.get(0), ce.getInput());
+        return !hypOutput.suffix(ce.getSuffix().length()).equals(ce.getOutput());
+    }
+
+    private Word<O> computeOutput(State<I, O> state, Word<I> word) {
+        List<O> output = new ArrayList<>(word.length());
+        for (I input : word) {
+            int i = alphabet.getSymbolIndex(input);
+            output.add(state.outputs.get(i));
+            state = state.successors.get(i);
+        }
+        return Word.fromList(output);
+    }
+
+    private State<I, O> getState(Word<I> word) {
+        State<I, O> state = states.get(0);
+        for (I input : word) {
+            state = state.successors.get(alphabet.getSymbolIndex(input));
+        }
+        return state;
+    }
+
+    /*
+     * Output of the target for the part of the counterexample after position i, when starting from the access
+     * sequence of the hypothesis state reached at position i
+     */
+    private Word<O> targetOutput(Word<I> input, int i) {
+        DefaultQuery<I, Word<O>> query = new DefaultQuery<>(getState(input.prefix(i)).accessSequence, input.subWord(i));
+        oracle.processQueries(Collections.singleton(query));
+        return query.getOutput();
+    }
+
+    /*
+     * Find a position in the counterexample where replacing the prefix by the access sequence of the reached state
+     * changes the outcome (Rivest-Schapire), and split the state reached after that position.
+     */
+    private boolean splitState(DefaultQuery<I, Word<O>> ce) {
+        Word<I> input = ce.getInput();
+
+        // Position lo does not agree with the hypothesis, position hi does
+        int lo = 0;
+        int hi = input.length();
+        Word<O> loOutput = targetOutput(input, lo);
+        Word<O> hiOutput = Word.epsilon();
+        while (hi - lo > 1) {
+            int mid = (lo + hi) / 2;
+            Word<O> midOutput = targetOutput(input, mid);
+            if (midOutput.equals(computeOutput(getState(input.prefix(mid)), input.subWord(mid)))) {
+                hi = mid;
+                hiOutput = midOutput;
+            } else {
+                lo = mid;
+                loOutput = midOutput;
+            }
+        }
+
+        Word<I> discriminator = input.subWord(hi);
+        Word<O> newOutcome = loOutput.subWord(1);
+        if (discriminator.isEmpty() || newOutcome.equals(hiOutput)) {
+            log.warn("Counterexample analysis failed, target is not deterministic: " + ce);
+            return false;
+        }
+
+        State<I, O> source = getState(input.prefix(lo));
+        State<I, O> oldState = getState(input.prefix(hi));
+
+        // Turn the leaf of the old state into an inner node with the new discriminator
+        Node<I, O> node = oldState.leaf;
+        node.state = null;
+        node.discriminator = discriminator;
+        node.children = new HashMap<>();
+
+        Node<I, O> oldLeaf = new Node<>();
+        oldLeaf.state = oldState;
+        oldState.leaf = oldLeaf;
+        node.children.put(hiOutput, oldLeaf);
+
+        Node<I, O> newLeaf = new Node<>();
+        node.children.put(newOutcome, newLeaf);
+        createState(source.accessSequence.append(input.getSymbol(lo)), newLeaf);
+
+        // Transitions that pointed to the old state have to be sifted again from the new inner node
+        List<State<I, O>> sources = new ArrayList<>();
+        List<Integer> inputs = new ArrayList<>();
+        List<Word<I>> words = new ArrayList<>();
+        for (State<I, O> state : states) {
+            for (int i = 0; i < alphabet.size(); i++) {
+                if (state.successors.get(i) == oldState) {
+                    sources.add(state);
+                    inputs.add(i);
+                    words.add(state.accessSequence.append(alphabet.getSymbol(i)));
+                }
+            }
+        }
+
+        List<State<I, O>> targets = sift(words, new ArrayList<>(Collections.nCopies(words.size(), node)));
+        for (int k = 0; k < words.size(); k++) {
+            sources.get(k).successors.set(inputs.get(k), targets.get(k));
+        }
+
+        return true;
+    }
+}
@@ -3,7 +3,9 @@
 
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.core.joran.spi.JoranException;
 import de.learnlib.algorithms.dhc.mealy.MealyDHC;
+import de.learnlib.algorithms.lstargeneric.ce.ObservationTableCEXHandler;
 import de.learnlib.algorithms.lstargeneric.ce.ObservationTableCEXHandlers;
 import de.learnlib.algorithms.lstargeneric.closing.ClosingStrategies;
 import de.learnlib.algorithms.lstargeneric.mealy.ClassicLStarMealy;
@@ -22,7 +24,6 @@
 import learner.ModifiedWpMethodEQOracle.ModifiedMealyWpMethodEQOracle;
 import net.automatalib.automata.transout.MealyMachine;
 import net.automatalib.commons.util.mappings.MapMapping;
-import net.automatalib.util.graphs.dot.GraphDOT;
 import net.automatalib.words.Alphabet;
 import net.automatalib.words.Word;
 import org.slf4j.Logger;
@@ -32,13 +33,13 @@
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Properties;
 import java.util.Random;
 
 /**
@@ -53,68 +54,208 @@ public class Learner {
 
     Alphabet<String> alphabet;
     SUL<String, String> sul;
+    TLSSUL tlsSul;
+    WorkerCoordinatorOracle workerCoordinator;
+    Budget budget;
+    CostModel<String> costModel;
 
     MapMapping<String, String> errorMapping;
 
     MembershipOracle<String, Word<String>> sulMembershipOracle;
     MembershipOracle<String, Word<String>> cacheMemOracle;
     MealyCounterOracle<String, String> statsMemOracle;
+    MealyCounterOracle<String, String> statsCacheMemOracle;
+    MembershipOracle<String, Word<String>> learnerMemOracle;
+    QueryCache<String, String> queryCache;
+
+    MealyCounterOracle<String, String> statsCEOracle;
+    CounterexampleProcessor<String, String> ceProcessor;
 
     LearningAlgorithm learner;
+    Alphabet<String> learningAlphabet;
+    AlphabetReduction<String> alphabetReduction;
+    AlphabetReductionEQOracle<String, String> alphabetReductionEQOracle;
+    WarmStart<String, String> warmStart;
+    PreviousModelOracle<String, String> previousModelMemOracle;
+    PreviousModelOracle<String, String> previousModelEQOracle;
+    List<TLSSUL> speculativeSuls;
+    SULPool<String, String> sulPool;
+    MajorityVoteOracle<String, String> majorityMemOracle;
+    MajorityVoteOracle<String, String> majorityEQOracle;
+    SpeculativeExecutor<String, String> speculativeExecutor;
 
 
     MapMapping<String, String> errorMappingEquiv;
 
     MembershipOracle<String, Word<String>> sulEquivalenceOracle;
+    EarlyAbortOracle<String, String> earlyAbortOracle;
     MembershipOracle<String, Word<String>> cacheEQOracle;
     MealyCounterOracle<String, String> statsEQOracle;
     MealyCounterOracle<String, String> statsCacheEQOracle;
     EquivalenceOracle<MealyMachine<?, String, ?, String>, String, Word<String>> eqOracle;
+    CoverageReporter coverageReporter;
 
     MealyMachine<?, String, ?, String> result;
+    ModelExporter modelExporter;
 
     FileOutputStream logMemQueries;
     FileOutputStream logEquivQueries;
 
     public Learner(String configFile) throws Exception {
-        config = new TLSConfig(configFile);
-
-        LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
-        loggerContext.reset();
-        JoranConfigurator configurator = new JoranConfigurator();
-        loggerContext.putProperty("logDirectory", config.output_dir);
-        configurator.setContext(loggerContext);
-        configurator.doConfigure(getClass().getClassLoader().getResource("log.xml"));
+        this(loadConfig(configFile));
+    }
 
-        SLF4JBridgeHandler.removeHandlersForRootLogger();
-        SLF4JBridgeHandler.install();
+    /**
+     * Create a learner without changing the logging configuration, for instance to run several experiments in one JVM.
+     */
+    public Learner(TLSConfig config) throws Exception {
+        this.config = config;
+
+        budget = new Budget(config.budget_queries, config.budget_steps, config.budget_time * 1000, config.budget_round_queries, config.budget_round_steps, config.budget_round_time * 1000);
+        if (!budget.isUnlimited())
+            log.info("Using budget for the SUL");
+        costModel = new CostModel<>();
+        modelExporter = new ModelExporter(config.output_dir, ModelExporter.parseFormats(config.model_render), config.model_export_queue, config.model_render_threads);
+        ModelSimplifier simplifier = new ModelSimplifier();
+        simplifier.setCollapseSinks(config.model_simplify_sinks);
+        simplifier.setCollapseSelfLoops(config.model_simplify_self_loops);
+        simplifier.setMaxOutputLength(config.model_simplify_max_output);
+        modelExporter.setSimplifier(simplifier);
+
+        if (config.workers != null) {
+            // The targets run on the workers, components stepping a local SUL can not be used
+            if (config.eqtest.equals("randomwalk") || config.nondeterminism_repeats > 1)
+                throw new Exception("Random walk equivalence testing and majority vote need a local SUL and can not be used with workers");
+            if (config.eqtest_early_abort) {
+                log.info("Early abort is not supported with workers");
+                config.eqtest_early_abort = false;
+            }
 
-        sul = new TLSSUL(config);
+            workerCoordinator = new WorkerCoordinatorOracle(WorkerCoordinatorOracle.parseWorkers(config.workers), config.worker_batch, config.worker_heartbeat, budget);
+            log.info("Executing queries on workers " + config.workers);
+        } else {
+            tlsSul = new TLSSUL(config);
+            // Also used to count queries and steps without a budget
+            sul = new BudgetSUL<>(new TimingSUL<>(tlsSul, costModel), budget);
+        }
 
         alphabet = config.alphabet;
 
         errorMapping = new MapMapping<>();
         //errorMapping.put("ConnectionClosed", "ConnectionClosed");
 
-        sulMembershipOracle = new BasicMembershipOracle(sul);
+        sulMembershipOracle = workerCoordinator != null ? workerCoordinator : new BasicMembershipOracle(sul);
+
+        if (config.warm_start_model != null) {
+            warmStart = WarmStart.read(config.warm_start_model);
+            log.info("Using warm start from " + config.warm_start_model);
+
+            // The learner should find the answers to the warm start queries in the cache
+            if (config.cache.equalsIgnoreCase("none")) {
+                log.info("Warm start enables the shared cache");
+                config.cache = "shared";
+            }
+
+            if (config.warm_start_trust)
+                log.info("Only querying words with inputs not in the previous model: " + warmStart.getNewInputs(alphabet));
+        }
+
+        if (config.speculative_suls > 0 && config.cache.equalsIgnoreCase("none")) {
+            log.info("Speculative execution enables the shared cache");
+            config.cache = "shared";
+        }
+
+        if (config.cache_file != null && config.cache.equalsIgnoreCase("none")) {
+            log.info("Cache file enables the shared cache");
+            config.cache = "shared";
+        }
+
+        if (config.speculative_suls > 0) {
+            speculativeSuls = new ArrayList<>();
+            List<SUL<String, String>> suls = new ArrayList<>();
+            for (int i = 1; i <= config.speculative_suls; i++) {
+                TLSSUL extra = new TLSSUL(config, config.port + i);
+                speculativeSuls.add(extra);
+                suls.add(new BudgetSUL<>(new TimingSUL<>(extra, costModel), budget));
+            }
+            sulPool = new SULPool<>(suls);
+        }
+
         //cacheMemOracle = new MealyCacheOracle<String, String>(alphabet, errorMapping, sulMembershipOracle);
-        statsMemOracle = new MealyCounterOracle<>(sulMembershipOracle, "membership queries");
+        if (config.cache.equalsIgnoreCase("shared") || config.cache.equalsIgnoreCase("errormapping")) {
+            log.info("Using shared cache for membership and equivalence queries");
+            queryCache = new QueryCache<>(config.cache.equalsIgnoreCase("errormapping") ? "ConnectionClosed" : null, config.cache_max_nodes);
 
-        if (config.learning_algorithm.equalsIgnoreCase("lstar")) {
-            List<Word<String>> emptyList = Collections.emptyList();
-            learner = ClassicLStarMealy.createForWordOracle(alphabet, statsMemOracle, emptyList, ObservationTableCEXHandlers.CLASSIC_LSTAR, ClosingStrategies.CLOSE_FIRST);
-        } else if (config.learning_algorithm.equalsIgnoreCase("dhc")) {
-            learner = new MealyDHC<>(alphabet, statsMemOracle);
+            if (config.cache_file != null && new File(config.cache_file).exists())
+                QueryCache.load(queryCache, config.cache_file);
+
+            statsMemOracle = new MealyCounterOracle<>(sulMembershipOracle, "membership queries to SUL");
         } else {
-            throw new Exception("Unknown learning algorithm");
+            statsMemOracle = new MealyCounterOracle<>(sulMembershipOracle, "membership queries");
+        }
+
+        // Oracle chain between the cache and the SUL
+        MembershipOracle<String, Word<String>> memSulOracle = statsMemOracle;
+        if (config.nondeterminism_repeats > 1) {
+            log.info("Using majority vote of " + config.nondeterminism_repeats + " executions for suspicious queries");
+            majorityMemOracle = createMajorityVoteOracle(memSulOracle, false);
+            memSulOracle = majorityMemOracle;
+        }
+        if (warmStart != null && config.warm_start_trust) {
+            previousModelMemOracle = warmStart.createOracle(memSulOracle);
+            memSulOracle = previousModelMemOracle;
         }
 
+        if (queryCache != null) {
+            cacheMemOracle = createQueryCacheOracle(memSulOracle, majorityMemOracle);
+            statsCacheMemOracle = new MealyCounterOracle<>(cacheMemOracle, "membership queries to cache");
+            learnerMemOracle = statsCacheMemOracle;
+        } else {
+            learnerMemOracle = memSulOracle;
+        }
+
+        if (config.speculative_suls > 0) {
+            speculativeExecutor = new SpeculativeExecutor<>(sulPool, queryCache);
+            speculativeExecutor.setCostModel(costModel);
+            speculativeExecutor.setMaxWords(config.speculative_max_words);
+            log.info("Using " + config.speculative_suls + " additional SULs for speculative equivalence testing");
+        }
+
+        learningAlphabet = alphabet;
+        learner = createLearningAlgorithm(learningAlphabet);
+
         log.info("Using learning algorithm " + config.learning_algorithm);
 
-        sulEquivalenceOracle = new BasicEquivalenceOracle(sul);
+        statsCEOracle = new MealyCounterOracle<>(queryCache != null ? createQueryCacheOracle(memSulOracle, majorityMemOracle) : sulMembershipOracle, "counterexample processing queries");
+        ceProcessor = new CounterexampleProcessor<>(statsCEOracle, CounterexampleProcessor.parseStages(config.ce_processing));
+        if (!ceProcessor.isEmpty())
+            log.info("Using counterexample processing " + config.ce_processing);
+
+        if (config.eqtest_early_abort) {
+            log.info("Using early abort for equivalence queries");
+            earlyAbortOracle = new EarlyAbortOracle<>(sul, "ConnectionClosed");
+            sulEquivalenceOracle = earlyAbortOracle;
+        } else if (workerCoordinator != null) {
+            sulEquivalenceOracle = workerCoordinator;
+        } else {
+            sulEquivalenceOracle = new BasicEquivalenceOracle(sul);
+        }
         statsEQOracle = new MealyCounterOracle<>(sulEquivalenceOracle, "equivalence queries to SUL");
 
-        if (config.eqtest_caching.equalsIgnoreCase("regular") || config.eqtest_caching.equalsIgnoreCase("errormapping")) {
+        MembershipOracle<String, Word<String>> eqSulOracle = statsEQOracle;
+        if (config.nondeterminism_repeats > 1) {
+            majorityEQOracle = createMajorityVoteOracle(eqSulOracle, true);
+            eqSulOracle = majorityEQOracle;
+        }
+        if (warmStart != null && config.warm_start_trust) {
+            previousModelEQOracle = warmStart.createOracle(eqSulOracle);
+            eqSulOracle = previousModelEQOracle;
+        }
+
+        if (queryCache != null) {
+            cacheEQOracle = createQueryCacheOracle(eqSulOracle, majorityEQOracle);
+            statsCacheEQOracle = new MealyCounterOracle<>(cacheEQOracle, "equivalence queries to cache");
+        } else if (config.eqtest_caching.equalsIgnoreCase("regular") || config.eqtest_caching.equalsIgnoreCase("errormapping")) {
             log.info("Using caching for equivalence oracle");
 
             if (config.eqtest_caching.equalsIgnoreCase("errormapping")) {
@@ -122,10 +263,10 @@ public Learner(String configFile) throws Exception {
                 errorMapping.put("ConnectionClosed", "ConnectionClosed");
             }
 
-            cacheEQOracle = new MealyCacheOracle<>(alphabet, errorMapping, statsEQOracle);
+            cacheEQOracle = new MealyCacheOracle<>(alphabet, errorMapping, eqSulOracle);
             statsCacheEQOracle = new MealyCounterOracle<>(cacheEQOracle, "equivalence queries to cache");
         } else {
-            statsCacheEQOracle = new MealyCounterOracle<>(statsEQOracle, "equivalence queries");
+            statsCacheEQOracle = new MealyCounterOracle<>(eqSulOracle, "equivalence queries");
         }
 
         if (config.eqtest.equalsIgnoreCase("wmethod")) {
@@ -133,46 +274,179 @@ public Learner(String configFile) throws Exception {
         } else if (config.eqtest.equalsIgnoreCase("wpmethod")) {
             eqOracle = new MealyWpMethodEQOracle<>(config.max_depth, statsCacheEQOracle);
         } else if (config.eqtest.equalsIgnoreCase("modifiedwmethod")) {
-            eqOracle = new MealyModifiedWMethodEQOracle<>(config.max_depth, statsCacheEQOracle);
+            MealyModifiedWMethodEQOracle<String, String> wOracle = new MealyModifiedWMethodEQOracle<>(config.max_depth, statsCacheEQOracle);
+            wOracle.setTestSuiteOrdering(createTestSuiteOrdering());
+            eqOracle = wOracle;
         } else if (config.eqtest.equalsIgnoreCase("modifiedwpmethod")) {
-            eqOracle = new ModifiedMealyWpMethodEQOracle<>(config.max_depth, 10, statsCacheEQOracle);
+            ModifiedMealyWpMethodEQOracle<String, String> wpOracle = new ModifiedMealyWpMethodEQOracle<>(config.max_depth, 10, statsCacheEQOracle);
+            wpOracle.setTestSuiteOrdering(createTestSuiteOrdering());
+            eqOracle = wpOracle;
+        } else if (config.eqtest.equalsIgnoreCase("ads")) {
+            AdaptiveDistinguishingEQOracle<String, String> adsOracle = new AdaptiveDistinguishingEQOracle<>(config.max_depth, statsCacheEQOracle);
+            adsOracle.setTestSuiteOrdering(createTestSuiteOrdering());
+            eqOracle = adsOracle;
         } else if (config.eqtest.equalsIgnoreCase("randomwords")) {
             eqOracle = new MealyRandomWordsEQOracle<>(statsCacheEQOracle, config.min_length, config.max_length, config.nr_queries, new Random(config.seed));
+        } else if (config.eqtest.equalsIgnoreCase("randomwalk")) {
+            // Steps the SUL directly, so the equivalence query counters and cache are not used
+            eqOracle = new RandomWalkEQOracle<>(sul, config.restart_probability, config.max_steps, new Random(config.seed));
         } else {
             throw new Exception("Unknown equality test: " + config.eqtest);
         }
 
+        if (eqOracle instanceof CoverageReporter)
+            coverageReporter = (CoverageReporter) eqOracle;
+
+        // The random walk oracle already steps the SUL itself
+        if (earlyAbortOracle != null && !(eqOracle instanceof RandomWalkEQOracle))
+            eqOracle = new EarlyAbortEQOracle<>(eqOracle, earlyAbortOracle);
+
         log.info("Using equivalence oracle " + config.eqtest);
 
         //WpMethodEQOracle.MealyWpMethodEQOracle<String, String> eqOracle = new WpMethodEQOracle.MealyWpMethodEQOracle<String, String>(maxDepth, sulEquivalenceOracle);
     }
 
-    public void writeModel(MealyMachine<?, String, ?, String> model, String name) throws IOException, InterruptedException {
-        // Write output to file
-        File dotFile = new File(config.output_dir + "/" + name + ".dot");
-        PrintStream psDotFile = new PrintStream(dotFile);
-        GraphDOT.write(model, alphabet, psDotFile);
+    /*
+     * Read the configuration and log to its output directory
+     */
+    static TLSConfig loadConfig(String configFile) throws Exception {
+        TLSConfig config = new TLSConfig(configFile);
+        configureLogging(config.output_dir);
+        return config;
+    }
+
+    static void configureLogging(String outputDir) throws JoranException {
+        LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        loggerContext.reset();
+        JoranConfigurator configurator = new JoranConfigurator();
+        loggerContext.putProperty("logDirectory", outputDir);
+        configurator.setContext(loggerContext);
+        configurator.doConfigure(Learner.class.getClassLoader().getResource("log.xml"));
+
+        SLF4JBridgeHandler.removeHandlersForRootLogger();
+        SLF4JBridgeHandler.install();
+    }
+
+    QueryCacheOracle<String, String> createQueryCacheOracle(MembershipOracle<String, Word<String>> delegate, MajorityVoteOracle<String, String> resolver) {
+        QueryCacheOracle<String, String> oracle = new QueryCacheOracle<>(queryCache, delegate);
+        oracle.setResolver(resolver);
+        return oracle;
+    }
 
-        // Convert .dot to .pdf
-        Runtime.getRuntime().exec("dot -Tpdf -o " + config.output_dir + "/" + name + ".pdf " + config.output_dir + "/" + name + ".dot");
+    MajorityVoteOracle<String, String> createMajorityVoteOracle(MembershipOracle<String, Word<String>> delegate, boolean equivalence) {
+        MajorityVoteOracle<String, String> oracle = new MajorityVoteOracle<>(delegate, sul, config.nondeterminism_repeats, config.nondeterminism_suspicious_output, equivalence);
+        oracle.setPool(sulPool);
+        oracle.setCache(queryCache);
+        return oracle;
     }
 
-    public MealyMachine<?, String, ?, String> learn() throws Exception {
-        ModifiedMealyExperiment<String, String> experiment = new ModifiedMealyExperiment<>(learner, eqOracle, alphabet);
-        //MealyExperiment<String, String> experiment = new MealyExperiment<String, String>(learner, eqOracle, alphabet);
+    LearningAlgorithm createLearningAlgorithm(Alphabet<String> alphabet) throws Exception {
+        if (config.learning_algorithm.equalsIgnoreCase("lstar")) {
+            List<Word<String>> initialSuffixes = Collections.emptyList();
+            if (warmStart != null)
+                initialSuffixes = warmStart.getSuffixes(alphabet);
+            log.info("Using counterexample handler " + config.ce_handler);
+            return ClassicLStarMealy.createForWordOracle(alphabet, learnerMemOracle, initialSuffixes, getCEXHandler(), ClosingStrategies.CLOSE_FIRST);
+        } else if (config.learning_algorithm.equalsIgnoreCase("dhc")) {
+            return new MealyDHC<>(alphabet, learnerMemOracle);
+        } else if (config.learning_algorithm.equalsIgnoreCase("kv")) {
+            return new KearnsVaziraniMealy<>(alphabet, learnerMemOracle);
+        } else {
+            throw new Exception("Unknown learning algorithm");
+        }
+    }
+
+    ObservationTableCEXHandler<Object, Object> getCEXHandler() throws Exception {
+        switch (config.ce_handler) {
+            case "classic":
+                return ObservationTableCEXHandlers.CLASSIC_LSTAR;
+            case "suffix1by1":
+                return ObservationTableCEXHandlers.SUFFIX1BY1;
+            case "rivestschapire":
+                return ObservationTableCEXHandlers.RIVEST_SCHAPIRE;
+            case "shahbaz":
+                return ObservationTableCEXHandlers.SHAHBAZ;
+            case "malerpnueli":
+                return ObservationTableCEXHandlers.MALER_PNUELI;
+            default:
+                throw new Exception("Unknown counterexample handler: " + config.ce_handler);
+        }
+    }
+
+    TestSuiteOrdering<String> createTestSuiteOrdering() throws Exception {
+        TestSuiteOrdering<String> ordering = new TestSuiteOrdering<>(TestSuiteOrdering.parseHeuristics(config.eqtest_order), config.eqtest_sample, config.seed);
+        ordering.setCostModel(costModel);
+        if (ordering.isDefault())
+            return null;
 
-        log.info("Starting learning");
+        log.info("Ordering test suite by " + config.eqtest_order + ", sampling " + config.eqtest_sample);
+        return ordering;
+    }
+
+    public void writeModel(MealyMachine<?, String, ?, String> model, String name) {
+        // Written and rendered in the background
+        modelExporter.export(model, learningAlphabet, name);
+    }
 
-        experiment.setProfile(true);
-        experiment.setLogModels(true);
+    /*
+     * Replace the input symbols that behave the same on a sample of states by a single representative
+     */
+    void reduceAlphabet() throws Exception {
+        long queries = statsMemOracle.getCount();
+        alphabetReduction = AlphabetReduction.probe(learnerMemOracle, alphabet, config.probe_samples, config.probe_depth, new Random(config.seed));
+        alphabetReduction.write(config.output_dir + "/alphabet_mapping.txt");
+
+        alphabetReductionEQOracle = new AlphabetReductionEQOracle<>(eqOracle, statsCacheEQOracle, alphabetReduction);
+        eqOracle = alphabetReductionEQOracle;
+
+        learningAlphabet = alphabetReduction.getReducedAlphabet();
+        learner = createLearningAlgorithm(learningAlphabet);
+        log.info("Learning over reduced alphabet " + learningAlphabet + " (probe used " + (statsMemOracle.getCount() - queries) + " queries)");
+    }
 
-        long start = System.currentTimeMillis();
-        experiment.run(this);
+    public MealyMachine<?, String, ?, String> learn() throws Exception {
+        ModifiedMealyExperiment<String, String> experiment;
+        long start;
+        try {
+            if (config.alphabet_reduction)
+                reduceAlphabet();
+
+            log.info("Starting learning");
+
+            start = System.currentTimeMillis();
+            while (true) {
+                experiment = new ModifiedMealyExperiment<>(learner, eqOracle, learningAlphabet);
+                //MealyExperiment<String, String> experiment = new MealyExperiment<String, String>(learner, eqOracle, alphabet);
+
+                experiment.setProfile(true);
+                experiment.setLogModels(true);
+                if (!ceProcessor.isEmpty())
+                    experiment.setCounterexampleProcessor(ceProcessor);
+                if (warmStart != null)
+                    experiment.setWarmStart(warmStart);
+
+                experiment.run(this);
+
+                if (experiment.getBudgetExhausted() != null || alphabetReductionEQOracle == null || alphabetReductionEQOracle.getSplitSymbols().isEmpty())
+                    break;
+
+                // Merged symbols turned out to be different, restart with these symbols added to the alphabet
+                alphabetReduction.split(alphabetReductionEQOracle.getSplitSymbols());
+                alphabetReduction.write(config.output_dir + "/alphabet_mapping.txt");
+                learningAlphabet = alphabetReduction.getReducedAlphabet();
+                learner = createLearningAlgorithm(learningAlphabet);
+                log.info("Restarting learning over alphabet " + learningAlphabet);
+            }
+        } finally {
+            // Also stop the targets if learning failed, so they do not keep the ports in use
+            close();
+        }
         long end = System.currentTimeMillis();
 
         result = experiment.getFinalHypothesis();
+        if (alphabetReduction != null)
+            result = alphabetReduction.expand(result);
 
-        ((TLSSUL) sul).tls.close();
         // report results
         log.info("-------------------------------------------------------");
         // profiling
@@ -181,14 +455,86 @@ public void writeModel(MealyMachine<?, String, ?, String> model, String name) th
         // learning statistics
         log.info(experiment.getRounds().getSummary());
 
+        if (statsCacheMemOracle != null)
+            log.info(statsCacheMemOracle.getStatisticalData().getSummary());
         log.info(statsMemOracle.getStatisticalData().getSummary());
+        log.info(statsCEOracle.getStatisticalData().getSummary());
         log.info(statsEQOracle.getStatisticalData().getSummary());
         log.info(statsCacheEQOracle.getStatisticalData().getSummary());
+        if (queryCache != null)
+            log.info(queryCache.getSummary());
+        if (previousModelMemOracle != null)
+            log.info("Queries answered by previous model: " + previousModelMemOracle.getAnswered() + " membership, " + previousModelEQOracle.getAnswered() + " equivalence");
+        if (speculativeExecutor != null)
+            log.info(speculativeExecutor.getSummary());
+        if (workerCoordinator != null)
+            log.info(workerCoordinator.getSummary());
+        if (majorityMemOracle != null) {
+            log.info("Membership queries: " + majorityMemOracle.getSummary());
+            log.info("Equivalence queries: " + majorityEQOracle.getSummary());
+        }
+        if (earlyAbortOracle != null)
+            log.info("Early abort: " + earlyAbortOracle.getSteps() + " steps executed, " + earlyAbortOracle.getSkippedSteps() + " steps skipped");
+        if (eqOracle instanceof RandomWalkEQOracle)
+            log.info("Random walks: " + ((RandomWalkEQOracle<?, ?>) eqOracle).getWalks() + " walks, " + ((RandomWalkEQOracle<?, ?>) eqOracle).getSteps() + " steps");
+        log.info(costModel.getSummary());
         log.info("States in final hypothesis: " + result.size());
 
+        writeStatus(experiment, end - start);
+        if (config.cache_file != null)
+            queryCache.write(config.cache_file);
+
         return result;
     }
 
+    /*
+     * Record whether learning finished, and how far it got otherwise
+     */
+    void writeStatus(ModifiedMealyExperiment<String, String> experiment, long time) throws IOException {
+        Properties status = new Properties();
+        status.setProperty("status", experiment.getBudgetExhausted() == null ? "complete" : "budget_exhausted");
+        if (experiment.getBudgetExhausted() != null) {
+            status.setProperty("budget", experiment.getBudgetExhausted());
+            status.setProperty("budget_scope", experiment.isRoundBudgetExhausted() ? "round" : "total");
+        }
+        status.setProperty("rounds", Long.toString(experiment.getRounds().getCount()));
+        status.setProperty("states", Integer.toString(result.size()));
+        status.setProperty("queries", Long.toString(budget.getQueries()));
+        status.setProperty("steps", Long.toString(budget.getSteps()));
+        status.setProperty("time", Long.toString(time));
+        if (coverageReporter != null && coverageReporter.getCoverage() != null)
+            status.setProperty("eqtest_coverage", coverageReporter.getCoverage());
+
+        try (FileOutputStream out = new FileOutputStream(config.output_dir + "/status.properties")) {
+            status.store(out, "Learning status");
+        }
+    }
+
+    // Stop the targets, workers and speculative SULs
+    private void close() {
+        if (tlsSul != null)
+            tlsSul.tls.close();
+        if (workerCoordinator != null)
+            workerCoordinator.shutdown();
+        if (speculativeExecutor != null) {
+            speculativeExecutor.shutdown();
+            for (TLSSUL extra : speculativeSuls) {
+                extra.tls.close();
+            }
+        }
+    }
+
+    /**
+     * Copy the configuration to the output directory and write the final model, waiting until it is rendered.
+     */
+    public void finish(String configFile) throws Exception {
+        Files.copy(Paths.get(configFile), Paths.get(config.output_dir + "/config.properties"), StandardCopyOption.REPLACE_EXISTING);
+
+        // Write output and simplified output to file
+        modelExporter.exportFinal(result, alphabet, "learnedModel");
+        modelExporter.shutdown();
+    }
+
     public static void main(String[] args) throws Exception {
         String configFile;
         if (args.length > 0)
@@ -196,32 +542,27 @@ public static void main(String[] args) throws Exception {
         else
             configFile = "config.properties";
 
-        Learner learner = new Learner(configFile);
-
-        MealyMachine<?, String, ?, String> result = learner.learn();
-
-        // Copy configuration to output file
-        Files.copy(Paths.get(configFile), Paths.get(learner.config.output_dir + "/config.properties"), StandardCopyOption.REPLACE_EXISTING);
-
-        // Write output to file
-        String outputFilename = learner.config.output_dir + "/learnedModel.dot";
-        String outputFilenamePdf = outputFilename.replace(".dot", ".pdf");
-        File dotFile = new File(outputFilename);
-        PrintStream psDotFile = new PrintStream(dotFile);
-        GraphDOT.write(result, learner.alphabet, psDotFile);
-
-        // Convert .dot to .pdf
-        Runtime.getRuntime().exec("dot -Tpdf -o " + outputFilenamePdf + " " + outputFilename);
-
-        // Simplified .dot file
-        List<String> lines = Files.readAllLines(Paths.get(outputFilename));
-        List<String> simpified = SimplifyDot.simplifyDot(lines);
-        String simplifiedOutputFilename = outputFilename.replace(".dot", "_simple.dot");
-        Files.write(Paths.get(simplifiedOutputFilename), simpified, Charset.defaultCharset());
+        TLSConfig config = loadConfig(configFile);
+        if (config.mode.equals("worker")) {
+            Worker.create(config).run();
+            return;
+        }
+        if (config.mode.equals("differential")) {
+            DifferentialTester.run(config);
+            return;
+        }
+        if (config.mode.equals("conform")) {
+            // Exit status for scripts
+            System.exit(ConformanceChecker.run(config) ? 0 : 1);
+        }
+        if (config.mode.equals("fuzz")) {
+            Fuzzer.run(config);
+            return;
+        }
 
-        // Convert .dot to .pdf
-        String simplifiedOutputFilenamePdf = outputFilenamePdf.replace(".pdf", "_simple.pdf");
-        Runtime.getRuntime().exec("dot -Tpdf -o " + simplifiedOutputFilenamePdf + " " + simplifiedOutputFilename);
+        Learner learner = new Learner(config);
+        learner.learn();
+        learner.finish(configFile);
 
         // Display output on screen
         //Writer w = DOT.createDotWriter(true);
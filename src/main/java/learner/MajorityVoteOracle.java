@@ -0,0 +1,328 @@
+package learner;
+
+import de.learnlib.api.MembershipOracle;
+import de.learnlib.api.Query;
+import de.learnlib.api.SUL;
+import de.learnlib.oracles.DefaultQuery;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Membership oracle that repeats suspicious queries and answers with the majority of the outputs.
+ * <p>
+ * Timing-dependent behaviour of the target (for instance records arriving just after the receive timeout) causes
+ * occasional wrong answers, which otherwise end up in the cache and the observation table. An answer is suspicious if
+ * it differs from the cached output for a prefix of the query, if it contains the suspicious output (usually "Empty")
+ * where the hypothesis predicts something else, or, for equivalence queries, if it differs from the hypothesis at
+ * all. Suspicious queries are repeated until one output has a majority of the maximum number of executions. The
+ * repetitions are executed in parallel on the SUL pool, if available.
+ * <p>
+ * Counterexamples found by an {@link EarlyAbortOracle} below this oracle are checked in the same way. If the majority
+ * agrees with the hypothesis after all, the complete query is executed without aborting.
+ */
+public class MajorityVoteOracle<I, O> implements MembershipOracle<I, Word<O>> {
+
+    private static final Logger log = LoggerFactory.getLogger(MajorityVoteOracle.class);
+
+    private final MembershipOracle<I, Word<O>> delegate;
+    private final SUL<I, O> sul;
+    private final int maxExecutions;
+    private final O suspiciousOutput;
+    private final boolean equivalence;
+
+    private SULPool<I, O> pool = null;
+    private ExecutorService executor = null;
+    private QueryCache<I, O> cache = null;
+    private CompactHypothesis<I, O> hypothesis = null;
+
+    private long repeatedQueries = 0;
+    private long repetitions = 0;
+    private long overruled = 0;
+    private final Map<I, long[]> instability = new LinkedHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param delegate         oracle executing the queries the first time
+     * @param sul              the SUL below the delegate, used to repeat queries if no pooled SUL is available
+     * @param maxExecutions    maximum number of executions of a suspicious query, including the first
+     * @param suspiciousOutput output that is suspicious if the hypothesis predicts another output, or null
+     * @param equivalence      true if any difference with the hypothesis is suspicious
+     */
+    public MajorityVoteOracle(MembershipOracle<I, Word<O>> delegate, SUL<I, O> sul, int maxExecutions, O suspiciousOutput, boolean equivalence) {
+        this.delegate = delegate;
+        this.sul = sul;
+        this.maxExecutions = maxExecutions;
+        this.suspiciousOutput = suspiciousOutput;
+        this.equivalence = equivalence;
+    }
+
+    /**
+     * @param pool SULs to execute repetitions on in parallel, or null to repeat queries one by one
+     */
+    public void setPool(SULPool<I, O> pool) {
+        this.pool = pool;
+        this.executor = pool == null ? null : Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "repetition-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param cache cache to compare answers with, or null
+     */
+    public void setCache(QueryCache<I, O> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param hypothesis the current hypothesis to compare answers with, or null
+     */
+    public void setHypothesis(CompactHypothesis<I, O> hypothesis) {
+        this.hypothesis = hypothesis;
+    }
+
+    @Override
+    public void processQueries(Collection<? extends Query<I, Word<O>>> queries) {
+        for (Query<I, Word<O>> query : queries) {
+            query.answer(answer(query.getInput()).subWord(query.getPrefix().length()));
+        }
+    }
+
+    private Word<O> answer(Word<I> input) {
+        DefaultQuery<I, Word<O>> first = new DefaultQuery<>(input);
+        try {
+            delegate.processQueries(Collections.singleton(first));
+        } catch (EarlyAbortOracle.CounterexampleFound e) {
+            @SuppressWarnings("unchecked")
+            Word<I> executed = (Word<I>) e.getInput();
+            @SuppressWarnings("unchecked")
+            Word<O> executedOutput = (Word<O>) e.getOutput();
+            Word<O> majority = vote(executed, executedOutput);
+            if (differsFromHypothesis(executed, majority))
+                throw new EarlyAbortOracle.CounterexampleFound(executed, majority);
+
+            log.info("Counterexample for {} not confirmed by majority, executing complete query", executed);
+            Word<O> output = execute(sul, input);
+            return isSuspicious(input, output) ? vote(input, output) : output;
+        }
+
+        Word<O> output = first.getOutput();
+        return isSuspicious(input, output) ? vote(input, output) : output;
+    }
+
+    /**
+     * Execute the query the maximum number of times, without comparing with the cache or hypothesis.
+     *
+     * @return the majority output
+     */
+    public Word<O> confirm(Word<I> input) {
+        List<Word<O>> answers = repeat(input, maxExecutions);
+        Word<O> majority = majority(answers);
+        record(input, answers, majority, answers.get(0));
+        return majority;
+    }
+
+    private boolean isSuspicious(Word<I> input, Word<O> output) {
+        if (cache != null) {
+            Word<O> cached = cache.lookupPrefix(input);
+            if (!output.prefix(cached.length()).equals(cached))
+                return true;
+        }
+
+        Word<O> expected = predict(input);
+        if (expected == null)
+            return false;
+
+        for (int i = 0; i < output.length(); i++) {
+            O out = output.getSymbol(i);
+            if (Objects.equals(out, expected.getSymbol(i)))
+                continue;
+            if (equivalence || Objects.equals(out, suspiciousOutput))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean differsFromHypothesis(Word<I> input, Word<O> output) {
+        Word<O> expected = predict(input);
+        return expected == null || !expected.equals(output);
+    }
+
+    /*
+     * Output of the hypothesis, or null if there is no hypothesis or the input contains symbols it does not know
+     * (for instance when learning over a reduced alphabet)
+     */
+    private Word<O> predict(Word<I> input) {
+        CompactHypothesis<I, O> hyp = hypothesis;
+        if (hyp == null)
+            return null;
+        for (I symbol : input) {
+            if (!hyp.getInputs().contains(symbol))
+                return null;
+        }
+        return hyp.computeOutput(input);
+    }
+
+    /*
+     * Repeat the query until the majority output is given by a majority of the maximum number of executions
+     */
+    private Word<O> vote(Word<I> input, Word<O> first) {
+        List<Word<O>> answers = new ArrayList<>();
+        answers.add(first);
+
+        int needed = maxExecutions / 2 + 1;
+        Word<O> majority = first;
+        int votes = 1;
+        while (votes < needed && answers.size() < maxExecutions) {
+            answers.addAll(repeat(input, Math.min(needed - votes, maxExecutions - answers.size())));
+            majority = majority(answers);
+            votes = Collections.frequency(answers, majority);
+        }
+
+        record(input, answers, majority, first);
+        return majority;
+    }
+
+    /*
+     * Majority per output symbol, among the answers that agree with the majority on the preceding outputs. With long
+     * queries most wrong answers differ from each other, so this is more robust than a majority of complete answers.
+     */
+    private Word<O> majority(List<Word<O>> answers) {
+        List<Word<O>> candidates = new ArrayList<>(answers);
+        WordBuilder<O> majority = new WordBuilder<>();
+        for (int i = 0; i < candidates.get(0).length(); i++) {
+            Map<O, Integer> votes = new LinkedHashMap<>();
+            O best = null;
+            for (Word<O> candidate : candidates) {
+                O symbol = candidate.getSymbol(i);
+                int count = votes.containsKey(symbol) ? votes.get(symbol) + 1 : 1;
+                votes.put(symbol, count);
+                if (best == null || count > votes.get(best))
+                    best = symbol;
+            }
+
+            majority.append(best);
+            Iterator<Word<O>> it = candidates.iterator();
+            while (it.hasNext()) {
+                if (!Objects.equals(it.next().getSymbol(i), best))
+                    it.remove();
+            }
+        }
+        return majority.toWord();
+    }
+
+    /*
+     * Execute the query the given number of times, on pooled SULs where available and on the own SUL otherwise
+     */
+    private List<Word<O>> repeat(final Word<I> input, int count) {
+        List<Future<Word<O>>> futures = new ArrayList<>();
+        int local = 0;
+        for (int i = 0; i < count; i++) {
+            final SUL<I, O> pooled = (i > 0 && pool != null) ? pool.tryAcquire() : null;
+            if (pooled == null) {
+                local++;
+                continue;
+            }
+
+            futures.add(executor.submit(new Callable<Word<O>>() {
+                @Override
+                public Word<O> call() {
+                    try {
+                        return execute(pooled, input);
+                    } finally {
+                        pool.release(pooled);
+                    }
+                }
+            }));
+        }
+
+        List<Word<O>> answers = new ArrayList<>(count);
+        for (int i = 0; i < local; i++) {
+            answers.add(execute(sul, input));
+        }
+        for (Future<Word<O>> future : futures) {
+            try {
+                answers.add(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new RuntimeException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        repetitions += count;
+        return answers;
+    }
+
+    private Word<O> execute(SUL<I, O> target, Word<I> input) {
+        target.reset();
+        WordBuilder<O> output = new WordBuilder<>(input.length());
+        for (I symbol : input) {
+            output.append(target.step(symbol));
+        }
+        return output.toWord();
+    }
+
+    /*
+     * Count for every input how often it was executed in repeated queries, and how often an answer first differed
+     * from the majority at that input
+     */
+    private void record(Word<I> input, List<Word<O>> answers, Word<O> majority, Word<O> first) {
+        repeatedQueries++;
+        if (!majority.equals(first))
+            overruled++;
+
+        for (I symbol : input) {
+            counts(symbol)[0] += answers.size();
+        }
+
+        boolean unstable = false;
+        for (Word<O> answer : answers) {
+            for (int i = 0; i < Math.min(answer.length(), majority.length()); i++) {
+                if (!Objects.equals(answer.getSymbol(i), majority.getSymbol(i))) {
+                    counts(input.getSymbol(i))[1]++;
+                    unstable = true;
+                    break;
+                }
+            }
+        }
+
+        if (unstable)
+            log.warn("Nondeterministic answers for {}: {}, using {}", input, answers, majority);
+        else
+            log.info("Repeated suspicious query {} {} times, all answers {}", input, answers.size(), majority);
+    }
+
+    private long[] counts(I symbol) {
+        long[] counts = instability.get(symbol);
+        if (counts == null) {
+            counts = new long[2];
+            instability.put(symbol, counts);
+        }
+        return counts;
+    }
+
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder("Majority vote: " + repeatedQueries + " suspicious queries, " + repetitions + " repetitions, " + overruled + " first answers overruled");
+        for (Map.Entry<I, long[]> entry : instability.entrySet()) {
+            if (entry.getValue()[1] > 0)
+                sb.append(", ").append(entry.getKey()).append(" unstable in ").append(entry.getValue()[1]).append(" of ").append(entry.getValue()[0]).append(String.format(" (%.1f%%)", 100.0 * entry.getValue()[1] / entry.getValue()[0]));
+        }
+        return sb.toString();
+    }
+}
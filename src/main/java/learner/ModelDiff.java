@@ -0,0 +1,278 @@
+package learner;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+import java.io.File;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Compare learned models (.mealy or .dot files).
+ * <p>
+ * Usage:
+ * <ul>
+ * <li>ModelDiff [-n traces] model1 model2: check whether the models are equivalent, and print the shortest traces
+ * distinguishing them</li>
+ * <li>ModelDiff directory: compare all .mealy models in the directory with each other. Other files, such as the
+ * simplified .dot files, are ignored, and models that cannot be read are skipped with a warning</li>
+ * </ul>
+ * Models are compared by a breadth-first search of the product of the two models over the inputs they have in common.
+ * If the alphabets differ, equivalent models are reported as equivalent on the common inputs.
+ * In a directory, models with the same canonical form are grouped first, so only different models are compared. The
+ * pairs are compared in parallel.
+ */
+public class ModelDiff {
+
+    /**
+     * A distinguishing trace with the outputs of both models.
+     */
+    public static class Trace {
+        public final Word<String> input;
+        public final Word<String> output1;
+        public final Word<String> output2;
+
+        Trace(Word<String> input, Word<String> output1, Word<String> output2) {
+            this.input = input;
+            this.output1 = output1;
+            this.output2 = output2;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxTraces = 5;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-n") && i + 1 < args.length)
+                maxTraces = Integer.parseInt(args[++i]);
+            else
+                files.add(args[i]);
+        }
+
+        if (files.size() == 2) {
+            compare(files.get(0), files.get(1), maxTraces);
+        } else if (files.size() == 1 && new File(files.get(0)).isDirectory()) {
+            compareDirectory(new File(files.get(0)));
+        } else {
+            System.out.println("Usage: ModelDiff [-n traces] model1 model2");
+            System.out.println("       ModelDiff directory");
+        }
+    }
+
+    private static void compare(String file1, String file2, int maxTraces) throws Exception {
+        CompactMealy<String, String> model1 = ModelFile.read(file1);
+        CompactMealy<String, String> model2 = ModelFile.read(file2);
+        List<String> inputs = commonInputs(model1, model2);
+        if (!sameInputs(model1, model2, inputs))
+            System.out.println("Comparing on common inputs " + inputs);
+
+        List<Trace> traces = findDistinguishingTraces(model1, model2, inputs, maxTraces);
+        if (traces.isEmpty()) {
+            System.out.println("Models are equivalent" + (sameInputs(model1, model2, inputs) ? "" : " on common inputs") + " (" + model1.size() + " and " + model2.size() + " states)");
+            return;
+        }
+
+        System.out.println("Models are different (" + model1.size() + " and " + model2.size() + " states), shortest distinguishing traces:");
+        for (Trace trace : traces) {
+            System.out.println(trace.input);
+            System.out.println("  " + file1 + ": " + trace.output1);
+            System.out.println("  " + file2 + ": " + trace.output2);
+        }
+    }
+
+    private static void compareDirectory(File directory) throws Exception {
+        long start = System.currentTimeMillis();
+        List<String> names = new ArrayList<>();
+        List<CompactMealy<String, String>> models = new ArrayList<>();
+        File[] files = directory.listFiles();
+        Arrays.sort(files);
+        for (File file : files) {
+            if (!file.getName().endsWith(".mealy"))
+                continue;
+            try {
+                models.add(ModelFile.read(file.getPath()));
+                names.add(file.getName());
+            } catch (Exception e) {
+                System.err.println("Skipping " + file.getName() + ": " + e.getMessage());
+            }
+        }
+
+        // Group identical models by their canonical form
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < models.size(); i++) {
+            String key = canonicalForm(models.get(i));
+            if (!groups.containsKey(key))
+                groups.put(key, new ArrayList<Integer>());
+            groups.get(key).add(i);
+        }
+        final List<Integer> representatives = new ArrayList<>();
+        for (List<Integer> group : groups.values()) {
+            representatives.add(group.get(0));
+            if (group.size() > 1) {
+                StringBuilder line = new StringBuilder("Identical:");
+                for (int i : group) {
+                    line.append(" ").append(names.get(i));
+                }
+                System.out.println(line);
+            }
+        }
+
+        final int count = representatives.size();
+        final Trace[] results = new Trace[count * count];
+        final boolean[] equivalent = new boolean[count * count];
+        IntStream.range(0, count * count).parallel().filter(pair -> pair / count < pair % count).forEach(pair -> {
+            CompactMealy<String, String> model1 = models.get(representatives.get(pair / count));
+            CompactMealy<String, String> model2 = models.get(representatives.get(pair % count));
+            List<Trace> traces = findDistinguishingTraces(model1, model2, commonInputs(model1, model2), 1);
+            if (traces.isEmpty())
+                equivalent[pair] = true;
+            else
+                results[pair] = traces.get(0);
+        });
+
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                String pair = names.get(representatives.get(i)) + " " + names.get(representatives.get(j));
+                CompactMealy<String, String> model1 = models.get(representatives.get(i));
+                CompactMealy<String, String> model2 = models.get(representatives.get(j));
+                List<String> inputs = commonInputs(model1, model2);
+                if (equivalent[i * count + j] && !sameInputs(model1, model2, inputs))
+                    System.out.println("Equivalent on common inputs " + inputs + ": " + pair);
+                else if (equivalent[i * count + j])
+                    System.out.println("Equivalent: " + pair);
+                else
+                    System.out.println("Different: " + pair + ": " + results[i * count + j].input.length() + " " + results[i * count + j].input);
+            }
+        }
+        System.out.println("Compared " + models.size() + " models (" + count + " different) in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private static boolean sameInputs(CompactMealy<String, String> model1, CompactMealy<String, String> model2, List<String> common) {
+        return common.size() == model1.getInputAlphabet().size() && common.size() == model2.getInputAlphabet().size();
+    }
+
+    private static List<String> commonInputs(CompactMealy<String, String> model1, CompactMealy<String, String> model2) {
+        List<String> inputs = new ArrayList<>();
+        for (String input : model1.getInputAlphabet()) {
+            if (model2.getInputAlphabet().contains(input))
+                inputs.add(input);
+        }
+        return inputs;
+    }
+
+    /**
+     * Breadth-first search of the product of the models. Every pair of states is visited once, so every trace ends in a
+     * different pair of states or with a different input.
+     *
+     * @return up to the maximum number of shortest distinguishing traces, shortest first
+     */
+    public static List<Trace> findDistinguishingTraces(CompactMealy<String, String> model1, CompactMealy<String, String> model2, List<String> inputs, int maxTraces) {
+        Map<String, Integer> outputIds = new HashMap<>();
+        Table table1 = new Table(model1, inputs, outputIds);
+        Table table2 = new Table(model2, inputs, outputIds);
+        int size2 = table2.size;
+        int numInputs = inputs.size();
+
+        // Parent pair and input of every visited pair, to reconstruct the traces
+        Map<Long, long[]> parents = new HashMap<>();
+        Deque<Long> queue = new ArrayDeque<>();
+        parents.put(0L, null);
+        queue.add(0L);
+
+        List<Trace> traces = new ArrayList<>();
+        while (!queue.isEmpty() && traces.size() < maxTraces) {
+            long pair = queue.poll();
+            int state1 = (int) (pair / size2);
+            int state2 = (int) (pair % size2);
+            for (int i = 0; i < numInputs && traces.size() < maxTraces; i++) {
+                if (table1.outputs[state1 * numInputs + i] != table2.outputs[state2 * numInputs + i]) {
+                    Word<String> input = trace(parents, pair, inputs).append(inputs.get(i));
+                    traces.add(new Trace(input, model1.computeOutput(input), model2.computeOutput(input)));
+                    continue;
+                }
+
+                long succ = (long) table1.successors[state1 * numInputs + i] * size2 + table2.successors[state2 * numInputs + i];
+                if (!parents.containsKey(succ)) {
+                    parents.put(succ, new long[]{pair, i});
+                    queue.add(succ);
+                }
+            }
+        }
+        return traces;
+    }
+
+    /*
+     * Transition table of the reachable states over the given inputs, with the states numbered in breadth-first order
+     * (so the initial state is 0) and the outputs replaced by ids
+     */
+    private static class Table {
+        final int size;
+        final int[] successors;
+        final int[] outputs;
+
+        <S, T> Table(MealyMachine<S, String, T, String> model, List<String> inputs, Map<String, Integer> outputIds) {
+            Map<S, Integer> ids = new HashMap<>();
+            List<S> states = new ArrayList<>();
+            ids.put(model.getInitialState(), 0);
+            states.add(model.getInitialState());
+            List<Integer> successorList = new ArrayList<>();
+            List<Integer> outputList = new ArrayList<>();
+            for (int id = 0; id < states.size(); id++) {
+                for (String input : inputs) {
+                    T trans = model.getTransition(states.get(id), input);
+                    S succ = model.getSuccessor(trans);
+                    if (!ids.containsKey(succ)) {
+                        ids.put(succ, states.size());
+                        states.add(succ);
+                    }
+                    successorList.add(ids.get(succ));
+
+                    String output = model.getTransitionOutput(trans);
+                    Integer outputId = outputIds.get(output);
+                    if (outputId == null) {
+                        outputId = outputIds.size();
+                        outputIds.put(output, outputId);
+                    }
+                    outputList.add(outputId);
+                }
+            }
+
+            size = states.size();
+            successors = new int[successorList.size()];
+            outputs = new int[outputList.size()];
+            for (int i = 0; i < successors.length; i++) {
+                successors[i] = successorList.get(i);
+                outputs[i] = outputList.get(i);
+            }
+        }
+    }
+
+    private static Word<String> trace(Map<Long, long[]> parents, long pair, List<String> inputs) {
+        List<String> reversed = new ArrayList<>();
+        long[] parent = parents.get(pair);
+        while (parent != null) {
+            reversed.add(inputs.get((int) parent[1]));
+            parent = parents.get(parent[0]);
+        }
+        Collections.reverse(reversed);
+        WordBuilder<String> word = new WordBuilder<>(reversed.size());
+        for (String input : reversed) {
+            word.append(input);
+        }
+        return word.toWord();
+    }
+
+    /*
+     * Transition table with the states numbered in breadth-first order. Equal for identical minimal models with the
+     * same inputs.
+     */
+    private static String canonicalForm(CompactMealy<String, String> model) {
+        List<String> inputs = new ArrayList<>(model.getInputAlphabet());
+        Collections.sort(inputs);
+        Map<String, Integer> outputIds = new LinkedHashMap<>();
+        Table table = new Table(model, inputs, outputIds);
+        return inputs + " " + outputIds.keySet() + " " + Arrays.toString(table.successors) + " " + Arrays.toString(table.outputs);
+    }
+}
@@ -0,0 +1,231 @@
+package learner;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.util.automata.Automata;
+import net.automatalib.util.graphs.dot.GraphDOT;
+import net.automatalib.words.impl.SimpleAlphabet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes models to .dot files and renders them with Graphviz in the background.
+ * <p>
+ * The model is copied on the calling thread, as the learner changes its hypothesis in place, and skipped if it is
+ * equivalent to the previously exported model. Writing the copies is done by a single thread with a bounded queue: if
+ * the queue is full, the oldest waiting model is dropped instead of blocking the learner. Rendering is done by a
+ * limited number of dot processes. Only {@link #shutdown()} waits for the waiting models and renders.
+ */
+public class ModelExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(ModelExporter.class);
+
+    private final String outputDir;
+    private final List<String> formats;
+    private final ThreadPoolExecutor writer;
+    private final ExecutorService renderer;
+
+    private ModelSimplifier simplifier = new ModelSimplifier();
+    private CompactMealy<String, String> previous = null;
+
+    private final AtomicLong exported = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rendered = new AtomicLong();
+    private volatile boolean renderFailed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param outputDir     directory the files are written to
+     * @param formats       Graphviz output formats to render, for instance pdf or svg (empty to only write .dot files)
+     * @param queueSize     maximum number of models waiting to be written
+     * @param renderThreads maximum number of dot processes running at the same time
+     */
+    public ModelExporter(String outputDir, List<String> formats, int queueSize, int renderThreads) {
+        this.outputDir = outputDir;
+        this.formats = formats;
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize), threadFactory("model-writer"), new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                if (executor.isShutdown())
+                    return;
+                // Drop the oldest model, the newest one is the most interesting
+                executor.getQueue().poll();
+                dropped.incrementAndGet();
+                executor.execute(r);
+            }
+        });
+        this.renderer = Executors.newFixedThreadPool(Math.max(1, renderThreads), threadFactory("model-renderer"));
+    }
+
+    /**
+     * @param simplifier used to write the simplified version of the final model
+     */
+    public void setSimplifier(ModelSimplifier simplifier) {
+        this.simplifier = simplifier;
+    }
+
+    /**
+     * Parse a comma-separated list of formats, "none" for no rendering.
+     */
+    public static List<String> parseFormats(String formats) {
+        List<String> result = new ArrayList<>();
+        for (String format : formats.split(",")) {
+            if (!format.trim().isEmpty() && !format.trim().equalsIgnoreCase("none"))
+                result.add(format.trim().toLowerCase());
+        }
+        return result;
+    }
+
+    private static ThreadFactory threadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Export a hypothesis, unless it is equivalent to the previously exported one.
+     */
+    public void export(MealyMachine<?, String, ?, String> model, Collection<String> inputs, String name) {
+        CompactMealy<String, String> copy = copy(model, inputs);
+        if (previous != null && new ArrayList<>(previous.getInputAlphabet()).equals(new ArrayList<>(copy.getInputAlphabet())) && Automata.findSeparatingWord(previous, copy, copy.getInputAlphabet()) == null) {
+            skipped.incrementAndGet();
+            log.info("Not exporting " + name + ", equivalent to the previous model");
+            return;
+        }
+        previous = copy;
+        submit(copy, name, false);
+    }
+
+    /**
+     * Export a model, also writing a binary version (see {@link ModelFile}) and a simplified version with merged edges.
+     */
+    public void exportFinal(MealyMachine<?, String, ?, String> model, Collection<String> inputs, String name) {
+        submit(copy(model, inputs), name, true);
+    }
+
+    private void submit(final CompactMealy<String, String> model, final String name, final boolean isFinal) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(model, name, isFinal);
+                } catch (IOException e) {
+                    log.error("Could not write model " + name, e);
+                }
+            }
+        });
+    }
+
+    private void write(CompactMealy<String, String> model, String name, boolean isFinal) throws IOException {
+        String filename = outputDir + "/" + name + ".dot";
+        try (PrintStream out = new PrintStream(filename)) {
+            GraphDOT.write(model, model.getInputAlphabet(), out);
+        }
+        render(filename);
+        exported.incrementAndGet();
+
+        if (isFinal) {
+            ModelFile.write(model, model.getInputAlphabet(), outputDir + "/" + name + ".mealy");
+
+            String simplifiedFilename = outputDir + "/" + name + "_simple.dot";
+            try (Writer out = Files.newBufferedWriter(Paths.get(simplifiedFilename), Charset.defaultCharset())) {
+                simplifier.write(model, model.getInputAlphabet(), out);
+            }
+            render(simplifiedFilename);
+        }
+    }
+
+    private void render(final String filename) {
+        for (final String format : formats) {
+            renderer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String output = filename.replaceAll("\\.dot$", "." + format);
+                    try {
+                        Process process = new ProcessBuilder("dot", "-T" + format, "-o", output, filename).redirectErrorStream(true).start();
+                        // Nothing is expected on the output, but do not let dot block on a full pipe
+                        while (process.getInputStream().read() != -1) {
+                        }
+                        if (process.waitFor() == 0)
+                            rendered.incrementAndGet();
+                        else
+                            log.warn("Rendering " + output + " failed with exit code " + process.exitValue());
+                    } catch (IOException e) {
+                        // Usually Graphviz is not installed, only report this once
+                        if (!renderFailed) {
+                            renderFailed = true;
+                            log.warn("Could not render " + output + ": " + e.getMessage());
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+    }
+
+    /*
+     * Copy of the reachable part of the model, with the states numbered in breadth-first order
+     */
+    private static <S, T> CompactMealy<String, String> copy(MealyMachine<S, String, T, String> model, Collection<String> inputs) {
+        SimpleAlphabet<String> alphabet = new SimpleAlphabet<>();
+        alphabet.addAll(inputs);
+        CompactMealy<String, String> copy = new CompactMealy<>(alphabet);
+
+        Map<S, Integer> states = new HashMap<>();
+        Deque<S> queue = new ArrayDeque<>();
+        S initial = model.getInitialState();
+        states.put(initial, copy.addInitialState());
+        queue.add(initial);
+        while (!queue.isEmpty()) {
+            S state = queue.poll();
+            for (String input : alphabet) {
+                T trans = model.getTransition(state, input);
+                S succ = model.getSuccessor(trans);
+                Integer id = states.get(succ);
+                if (id == null) {
+                    id = copy.addState();
+                    states.put(succ, id);
+                    queue.add(succ);
+                }
+                copy.addTransition(states.get(state), input, id, model.getTransitionOutput(trans));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Wait until all waiting models are written and rendered.
+     */
+    public void shutdown() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(1, TimeUnit.HOURS);
+        renderer.shutdown();
+        renderer.awaitTermination(1, TimeUnit.HOURS);
+        log.info(getSummary());
+    }
+
+    public String getSummary() {
+        return "Model export: " + exported.get() + " models written, " + skipped.get() + " equivalent models skipped, " + dropped.get() + " dropped, " + rendered.get() + " files rendered";
+    }
+}
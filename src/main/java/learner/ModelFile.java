@@ -0,0 +1,221 @@
+package learner;
+
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.impl.SimpleAlphabet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reading and writing learned models.
+ * <p>
+ * The binary format (.mealy) starts with "MEAL" and a version, followed by the input symbols and the output symbols,
+ * the number of states and the initial state. Then for every state and every input the successor and the index of the
+ * output in the output symbols. All numbers are written as variable-length integers, so a model with less than 128
+ * states and outputs takes two bytes per transition. States are numbered in breadth-first order from the initial
+ * state, so equal models give equal files.
+ */
+public class ModelFile {
+
+    private static final Logger log = LoggerFactory.getLogger(ModelFile.class);
+
+    private static final int MAGIC = 0x4d45414c;
+    private static final int VERSION = 1;
+
+    private static final Pattern EDGE = Pattern.compile("^\\s*(\\w+) -> (\\w+) \\[label=\"(.*)\"\\];$");
+    private static final Pattern INITIAL = Pattern.compile("^\\s*__start\\d* -> (\\w+);$");
+
+    /**
+     * Read a .mealy file, or a .dot file written by GraphDOT.
+     */
+    public static CompactMealy<String, String> read(String filename) throws Exception {
+        if (filename.endsWith(".dot"))
+            return readDot(filename);
+        else
+            return readBinary(filename);
+    }
+
+    public static <S, T> void write(MealyMachine<S, String, T, String> model, Collection<String> inputs, String filename) throws IOException {
+        List<String> inputList = new ArrayList<>(inputs);
+        Map<String, Integer> outputIds = new LinkedHashMap<>();
+        Map<S, Integer> stateIds = new HashMap<>();
+        List<S> states = new ArrayList<>();
+
+        S initial = model.getInitialState();
+        stateIds.put(initial, 0);
+        states.add(initial);
+        List<Integer> successorList = new ArrayList<>();
+        List<Integer> outputList = new ArrayList<>();
+        for (int id = 0; id < states.size(); id++) {
+            for (String input : inputList) {
+                T trans = model.getTransition(states.get(id), input);
+                S succ = model.getSuccessor(trans);
+                Integer succId = stateIds.get(succ);
+                if (succId == null) {
+                    succId = states.size();
+                    stateIds.put(succ, succId);
+                    states.add(succ);
+                }
+                String output = model.getTransitionOutput(trans);
+                Integer outputId = outputIds.get(output);
+                if (outputId == null) {
+                    outputId = outputIds.size();
+                    outputIds.put(output, outputId);
+                }
+                successorList.add(succId);
+                outputList.add(outputId);
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(MAGIC);
+            writeVarInt(out, VERSION);
+            writeSymbols(out, inputList);
+            writeSymbols(out, new ArrayList<>(outputIds.keySet()));
+            writeVarInt(out, states.size());
+            writeVarInt(out, 0);
+            for (int i = 0; i < successorList.size(); i++) {
+                writeVarInt(out, successorList.get(i));
+                writeVarInt(out, outputList.get(i));
+            }
+        }
+    }
+
+    public static CompactMealy<String, String> readBinary(String filename) throws Exception {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            if (in.readInt() != MAGIC)
+                throw new Exception("Unknown model format: " + filename);
+            int version = readVarInt(in);
+            if (version != VERSION)
+                throw new Exception("Unknown model version " + version + ": " + filename);
+
+            List<String> inputs = readSymbols(in);
+            List<String> outputs = readSymbols(in);
+            int size = readVarInt(in);
+            int initial = readVarInt(in);
+
+            SimpleAlphabet<String> alphabet = new SimpleAlphabet<>();
+            alphabet.addAll(inputs);
+            CompactMealy<String, String> model = new CompactMealy<>(alphabet);
+            for (int state = 0; state < size; state++) {
+                if (state == initial)
+                    model.addInitialState();
+                else
+                    model.addState();
+            }
+            for (int state = 0; state < size; state++) {
+                for (String input : inputs) {
+                    int succ = readVarInt(in);
+                    int output = readVarInt(in);
+                    if (succ >= size || output >= outputs.size())
+                        throw new Exception("Corrupted model: " + filename);
+                    model.addTransition(state, input, succ, outputs.get(output));
+                }
+            }
+            return model;
+        }
+    }
+
+    /**
+     * Read a model written by GraphDOT, with edges labelled "input / output". Simplified models with merged edges are
+     * not supported.
+     */
+    public static CompactMealy<String, String> readDot(String filename) throws Exception {
+        Map<String, Map<String, String[]>> edges = new LinkedHashMap<>();
+        Set<String> inputs = new LinkedHashSet<>();
+        String initial = null;
+
+        for (String line : Files.readAllLines(Paths.get(filename))) {
+            Matcher matcher = EDGE.matcher(line);
+            if (matcher.matches()) {
+                String[] label = matcher.group(3).split(" / ", 2);
+                if (label.length != 2)
+                    throw new Exception("Unknown edge label in " + filename + ": " + line);
+
+                inputs.add(label[0]);
+                if (!edges.containsKey(matcher.group(1)))
+                    edges.put(matcher.group(1), new HashMap<String, String[]>());
+                edges.get(matcher.group(1)).put(label[0], new String[]{matcher.group(2), label[1]});
+                continue;
+            }
+
+            matcher = INITIAL.matcher(line);
+            if (matcher.matches())
+                initial = matcher.group(1);
+        }
+
+        if (initial == null)
+            throw new Exception("No initial state in " + filename);
+
+        SimpleAlphabet<String> alphabet = new SimpleAlphabet<>();
+        alphabet.addAll(inputs);
+        CompactMealy<String, String> model = new CompactMealy<>(alphabet);
+        Map<String, Integer> states = new HashMap<>();
+        states.put(initial, model.addInitialState());
+        for (String name : edges.keySet()) {
+            if (!states.containsKey(name))
+                states.put(name, model.addState());
+        }
+
+        for (Map.Entry<String, Map<String, String[]>> entry : edges.entrySet()) {
+            for (String input : inputs) {
+                String[] edge = entry.getValue().get(input);
+                if (edge == null)
+                    throw new Exception("No transition for " + input + " from state " + entry.getKey() + " in " + filename);
+                if (!states.containsKey(edge[0]))
+                    throw new Exception("No transitions from state " + edge[0] + " in " + filename);
+
+                model.addTransition(states.get(entry.getKey()), input, states.get(edge[0]), edge[1]);
+            }
+        }
+
+        log.debug("Read model from " + filename + ": " + model.size() + " states, inputs " + alphabet);
+        return model;
+    }
+
+    private static void writeSymbols(DataOutputStream out, List<String> symbols) throws IOException {
+        writeVarInt(out, symbols.size());
+        for (String symbol : symbols) {
+            byte[] bytes = String.valueOf(symbol).getBytes("UTF-8");
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static List<String> readSymbols(DataInputStream in) throws IOException {
+        int count = readVarInt(in);
+        List<String> symbols = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[readVarInt(in)];
+            in.readFully(bytes);
+            symbols.add(new String(bytes, "UTF-8"));
+        }
+        return symbols;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Invalid variable-length integer");
+    }
+}
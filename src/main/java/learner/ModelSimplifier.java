@@ -0,0 +1,227 @@
+package learner;
+
+import net.automatalib.automata.transout.MealyMachine;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Writes a readable .dot file of a Mealy machine, replacing {@link SimplifyDot} for learned models.
+ * <p>
+ * All transitions between the same pair of states are merged into one edge, with the inputs grouped by output
+ * ("A, B / X | C / Y"). Optionally:
+ * <ul>
+ * <li>sink states (all transitions are self-loops) with the same output for every input are merged into a single
+ * node, labelled with the output, or with the inputs grouped by output if a sink has several outputs, and their
+ * self-loops are left out</li>
+ * <li>the largest group of self-loops with the same output of a state is labelled "other", meaning every input that
+ * is not on another edge of the state</li>
+ * <li>outputs longer than a maximum length are replaced by an abbreviation, explained in a legend</li>
+ * </ul>
+ * The states are visited once in breadth-first order, and every edge is written as soon as its state is visited.
+ */
+public class ModelSimplifier {
+
+    private boolean collapseSinks = true;
+    private boolean collapseSelfLoops = true;
+    private int maxOutputLength = 0;
+
+    public void setCollapseSinks(boolean collapseSinks) {
+        this.collapseSinks = collapseSinks;
+    }
+
+    public void setCollapseSelfLoops(boolean collapseSelfLoops) {
+        this.collapseSelfLoops = collapseSelfLoops;
+    }
+
+    /**
+     * @param maxOutputLength outputs longer than this are abbreviated (0 to never abbreviate)
+     */
+    public void setMaxOutputLength(int maxOutputLength) {
+        this.maxOutputLength = maxOutputLength;
+    }
+
+    public <S, T> void write(MealyMachine<S, String, T, String> model, Collection<String> inputs, Appendable out) throws IOException {
+        new Writer<>(model, inputs, out).write();
+    }
+
+    private class Writer<S, T> {
+        final MealyMachine<S, String, T, String> model;
+        final Collection<String> inputs;
+        final Appendable out;
+
+        final Map<S, String> names = new HashMap<>();
+        final Map<List<String>, String> sinkNames = new LinkedHashMap<>();
+        final Map<String, String> abbreviations = new LinkedHashMap<>();
+        final Deque<S> queue = new ArrayDeque<>();
+        int states = 0;
+
+        Writer(MealyMachine<S, String, T, String> model, Collection<String> inputs, Appendable out) {
+            this.model = model;
+            this.inputs = inputs;
+            this.out = out;
+        }
+
+        void write() throws IOException {
+            out.append("digraph g {\n");
+
+            S initial = model.getInitialState();
+            name(initial);
+            while (!queue.isEmpty()) {
+                writeEdges(queue.poll());
+            }
+
+            if (!abbreviations.isEmpty()) {
+                StringBuilder legend = new StringBuilder();
+                for (Map.Entry<String, String> abbreviation : abbreviations.entrySet()) {
+                    legend.append(abbreviation.getValue()).append(": ").append(escape(abbreviation.getKey())).append("\\l");
+                }
+                out.append("\tlegend [shape=\"box\" label=\"").append(legend).append("\"];\n");
+            }
+
+            out.append("\t__start0 [label=\"\" shape=\"none\"];\n");
+            out.append("\t__start0 -> ").append(names.get(initial)).append(";\n");
+            out.append("}\n");
+        }
+
+        void writeEdges(S state) throws IOException {
+            String source = names.get(state);
+
+            // Target, output and inputs of the transitions, in the order of the inputs
+            Map<String, Map<String, List<String>>> edges = new LinkedHashMap<>();
+            for (String input : inputs) {
+                T trans = model.getTransition(state, input);
+                S succ = model.getSuccessor(trans);
+                String target = names.get(succ);
+                if (target == null)
+                    target = name(succ);
+
+                String output = abbreviate(String.valueOf(model.getTransitionOutput(trans)));
+                Map<String, List<String>> outputs = edges.get(target);
+                if (outputs == null) {
+                    outputs = new LinkedHashMap<>();
+                    edges.put(target, outputs);
+                }
+                List<String> group = outputs.get(output);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    outputs.put(output, group);
+                }
+                group.add(input);
+            }
+
+            // The largest group of self-loops with the same output becomes "other"
+            String other = null;
+            Map<String, List<String>> loops = edges.get(source);
+            if (collapseSelfLoops && loops != null) {
+                for (Map.Entry<String, List<String>> group : loops.entrySet()) {
+                    if (group.getValue().size() > 1 && (other == null || group.getValue().size() > loops.get(other).size()))
+                        other = group.getKey();
+                }
+            }
+
+            for (Map.Entry<String, Map<String, List<String>>> edge : edges.entrySet()) {
+                StringBuilder label = new StringBuilder();
+                for (Map.Entry<String, List<String>> group : edge.getValue().entrySet()) {
+                    if (label.length() > 0)
+                        label.append(" | ");
+                    boolean isOther = edge.getKey().equals(source) && group.getKey().equals(other);
+                    label.append(isOther ? "other" : join(group.getValue())).append(" / ").append(group.getKey());
+                }
+                out.append("\t").append(source).append(" -> ").append(edge.getKey()).append(" [label=\"").append(escape(label.toString())).append("\"];\n");
+            }
+        }
+
+        /*
+         * Name the state and write its node, or return the name of an already written sink with the same outputs.
+         * Sinks are not queued, as they have no edges to write.
+         */
+        String name(S state) throws IOException {
+            List<String> sinkOutputs = collapseSinks && !state.equals(model.getInitialState()) ? sinkOutputs(model, inputs, state) : null;
+            if (sinkOutputs != null) {
+                String name = sinkNames.get(sinkOutputs);
+                if (name == null) {
+                    name = "sink" + sinkNames.size();
+                    sinkNames.put(sinkOutputs, name);
+                    out.append("\t").append(name).append(" [shape=\"doublecircle\" label=\"").append(escape(sinkLabel(sinkOutputs))).append("\"];\n");
+                }
+                names.put(state, name);
+                return name;
+            }
+
+            String name = "s" + states++;
+            names.put(state, name);
+            out.append("\t").append(name).append(" [shape=\"circle\" label=\"").append(name.substring(1)).append("\"];\n");
+            queue.add(state);
+            return name;
+        }
+
+        /*
+         * The output of the sink, or the inputs grouped by output ("A, B / X | C / Y") if it has several outputs
+         */
+        String sinkLabel(List<String> outputs) {
+            Map<String, List<String>> groups = new LinkedHashMap<>();
+            Iterator<String> input = inputs.iterator();
+            for (String output : outputs) {
+                String abbreviated = abbreviate(output);
+                List<String> group = groups.get(abbreviated);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    groups.put(abbreviated, group);
+                }
+                group.add(input.next());
+            }
+            if (groups.size() == 1)
+                return groups.keySet().iterator().next();
+
+            StringBuilder label = new StringBuilder();
+            for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+                if (label.length() > 0)
+                    label.append(" | ");
+                label.append(join(group.getValue())).append(" / ").append(group.getKey());
+            }
+            return label.toString();
+        }
+
+        String abbreviate(String output) {
+            if (maxOutputLength <= 0 || output.length() <= maxOutputLength)
+                return output;
+            String abbreviation = abbreviations.get(output);
+            if (abbreviation == null) {
+                abbreviation = "O" + (abbreviations.size() + 1);
+                abbreviations.put(output, abbreviation);
+            }
+            return abbreviation;
+        }
+    }
+
+    /*
+     * The output for every input of a sink state, in the order of the inputs, or null if the state has a transition to
+     * another state. Sinks are only merged if these are equal, so sinks with the same outputs for different inputs are
+     * kept apart.
+     */
+    private static <S, T> List<String> sinkOutputs(MealyMachine<S, String, T, String> model, Collection<String> inputs, S state) {
+        List<String> outputs = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            T trans = model.getTransition(state, input);
+            if (!state.equals(model.getSuccessor(trans)))
+                return null;
+            outputs.add(String.valueOf(model.getTransitionOutput(trans)));
+        }
+        return outputs;
+    }
+
+    private static String join(List<String> symbols) {
+        StringBuilder result = new StringBuilder();
+        for (String symbol : symbols) {
+            if (result.length() > 0)
+                result.append(", ");
+            result.append(symbol);
+        }
+        return result.toString();
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -14,6 +14,7 @@
 import org.slf4j.LoggerFactory;
 
 import java.util.Collections;
+import java.util.List;
 
 /**
  * @author Joeri de Ruiter (j.deruiter@cs.bham.ac.uk)
@@ -58,52 +59,116 @@ public A run(Learner l) throws Exception {
             log.info("Starting round " + rounds.getCount());
             log.info("Learning");
             profileStart("Learning");
+            List<DefaultQuery<String, Word<String>>> warmStartQueries = null;
+            if (warmStart != null)
+                warmStartQueries = warmStart.verify(l.learnerMemOracle, (Alphabet<String>) inputs);
             learningAlgorithm.startLearning();
+            if (warmStart != null)
+                warmStart.refine((LearningAlgorithm<? extends MealyMachine<?, String, ?, String>, String, Word<String>>) learningAlgorithm, warmStartQueries);
             profileStop("Learning");
+            logQueries(l);
 
             boolean done = false;
             boolean refined = true;
             A hyp = null;
-            while (!done) {
-                hyp = learningAlgorithm.getHypothesisModel();
-                if (logModels && refined) {
-                    l.writeModel((MealyMachine<?, String, ?, String>) hyp, "hyp" + rounds.getCount());
-                    log.info("Model: {}", hyp);
-                }
+            A tested = null;
+            Word<I> unconfirmed = null;
+            long testedRound = 0;
+            try {
+                while (!done) {
+                    hyp = learningAlgorithm.getHypothesisModel();
+                    // The learner may change the hypothesis in place, keep a copy in case the budget is exhausted
+                    tested = (A) CompactHypothesis.create((MealyMachine<?, I, ?, ?>) hyp, inputs).toMealy(inputs);
+                    testedRound = rounds.getCount();
+                    if (l.majorityMemOracle != null) {
+                        // Also used while refining, to spot answers with missing data
+                        CompactHypothesis<String, String> compact = CompactHypothesis.create((MealyMachine<?, String, ?, String>) hyp, (Alphabet<String>) inputs);
+                        l.majorityMemOracle.setHypothesis(compact);
+                        l.majorityEQOracle.setHypothesis(compact);
+                    }
+                    if (logModels && refined) {
+                        l.writeModel((MealyMachine<?, String, ?, String>) hyp, "hyp" + rounds.getCount());
+                        log.info("Model: {}", hyp);
+                    }
 
-                log.info("Searching for counterexample");
-                profileStart("Searching for counterexample");
-                DefaultQuery<I, D> ce = equivalenceAlgorithm.findCounterExample(hyp, inputs);
-                if (ce == null) {
-                    done = true;
-                    continue;
-                }
-                profileStop("Searching for counterexample");
-
-                log.info("Countexample input:  {}", ce.getInput().toString());
-                log.info("Countexample output: {}", ce.getOutput().toString());
-
-                // next round ...
-                rounds.increment();
-                log.info("Starting round " + rounds.getCount());
-                log.info("Learning");
-                profileStart("Learning");
-                refined = learningAlgorithm.refineHypothesis(ce);
-                if (!refined) {
-                    log.info("Counterexample no refinement");
-                    log.info("Counterexample input: " + ce.getInput().toString());
-                    log.info("Counterexample output: " + ce.getOutput().toString());
-
-                    DefaultQuery<String, Word<String>> query = new DefaultQuery<>((Word<String>) ce.getInput());
-                    l.sulMembershipOracle.processQueries(Collections.singleton(query));
-                    log.info("Counterexample SUL output: " + query.getOutput().toString());
-
-                    Word<String> hypOutput = ((Output<String, Word<String>>) hyp).computeOutput((Word<String>) ce.getInput());
-                    log.info("Counterexample Hypothesis output: " + hypOutput.toString());
-
-                    throw new Exception("Counterexample is no refinement");
+                    log.info("Searching for counterexample");
+                    profileStart("Searching for counterexample");
+                    DefaultQuery<I, D> ce;
+                    l.budget.startRound();
+                    try {
+                        ce = equivalenceAlgorithm.findCounterExample(hyp, inputs);
+                    } finally {
+                        l.budget.endRound();
+                    }
+                    if (ce == null) {
+                        logQueries(l);
+                        done = true;
+                        continue;
+                    }
+                    profileStop("Searching for counterexample");
+
+                    log.info("Countexample input:  {}", ce.getInput().toString());
+                    log.info("Countexample output: {}", ce.getOutput().toString());
+
+                    if (ceProcessor != null) {
+                        profileStart("Counterexample processing");
+                        ce = (DefaultQuery<I, D>) ceProcessor.process((MealyMachine<?, String, ?, String>) hyp, (DefaultQuery<String, Word<String>>) ce);
+                        profileStop("Counterexample processing");
+
+                        log.info("Processed countexample input:  {}", ce.getInput().toString());
+                        log.info("Processed countexample output: {}", ce.getOutput().toString());
+                    }
+                    logQueries(l);
+
+                    // Keep the additional SULs busy with likely test words of the next round while refining
+                    if (l.speculativeExecutor != null)
+                        l.speculativeExecutor.speculate((MealyMachine<?, String, ?, String>) hyp, (Word<String>) ce.getInput(), (Alphabet<String>) inputs);
+
+                    // next round ...
+                    rounds.increment();
+                    log.info("Starting round " + rounds.getCount());
+                    log.info("Learning");
+                    profileStart("Learning");
+                    refined = learningAlgorithm.refineHypothesis(ce);
+                    if (!refined && l.majorityEQOracle != null && !ce.getInput().equals(unconfirmed)) {
+                        // Usually a wrong answer of a nondeterministic target, check the counterexample once more
+                        Word<String> majority = l.majorityEQOracle.confirm((Word<String>) ce.getInput());
+                        // Correct the cache, so later queries with this prefix are not answered with the wrong output
+                        if (l.queryCache != null)
+                            l.queryCache.replace((Word<String>) ce.getInput(), majority);
+                        Word<String> hypOutput = ((Output<String, Word<String>>) hyp).computeOutput((Word<String>) ce.getInput());
+                        if (majority.equals(hypOutput)) {
+                            log.info("Counterexample not confirmed by majority vote, continuing with the same hypothesis");
+                            unconfirmed = ce.getInput();
+                            profileStop("Learning");
+                            continue;
+                        }
+                    }
+                    if (!refined) {
+                        log.info("Counterexample no refinement");
+                        log.info("Counterexample input: " + ce.getInput().toString());
+                        log.info("Counterexample output: " + ce.getOutput().toString());
+
+                        DefaultQuery<String, Word<String>> query = new DefaultQuery<>((Word<String>) ce.getInput());
+                        l.sulMembershipOracle.processQueries(Collections.singleton(query));
+                        log.info("Counterexample SUL output: " + query.getOutput().toString());
+
+                        Word<String> hypOutput = ((Output<String, Word<String>>) hyp).computeOutput((Word<String>) ce.getInput());
+                        log.info("Counterexample Hypothesis output: " + hypOutput.toString());
+
+                        throw new Exception("Counterexample is no refinement");
+                    }
+                    profileStop("Learning");
+                    logQueries(l);
                 }
-                profileStop("Learning");
+            } catch (Budget.ExhaustedException e) {
+                if (tested == null)
+                    throw e;
+
+                budgetExhausted = e.getMessage();
+                roundBudgetExhausted = e.isRound();
+                log.info(budgetExhausted + ", using hypothesis of round " + testedRound + " as final model");
+                hyp = tested;
             }
             long end = System.currentTimeMillis();
             log.info("Total time: " + (end - start) + "ms (" + ((end - start) / 1000) + " s)");
@@ -114,8 +179,17 @@ public A run(Learner l) throws Exception {
 
     private static final Logger log = LoggerFactory.getLogger(ModifiedExperiment.class);
 
+    // Query counts at the previous call to logQueries
+    private long memQueries = 0;
+    private long ceQueries = 0;
+    private long eqQueries = 0;
+
     private boolean logModels = false;
     private boolean profile = false;
+    private CounterexampleProcessor<String, String> ceProcessor = null;
+    private WarmStart<String, String> warmStart = null;
+    private String budgetExhausted = null;
+    private boolean roundBudgetExhausted = false;
     private Counter rounds = new Counter("rounds", "#");
     private A finalHypothesis = null;
     private final ModifiedExperimentImpl<?, ?> impl;
@@ -141,6 +215,19 @@ public A getFinalHypothesis() {
     }
 
 
+    /*
+     * Log the queries used since the previous call, so the cost of learning and testing can be compared per round
+     */
+    private void logQueries(Learner l) {
+        long mem = l.statsMemOracle.getCount();
+        long ce = l.statsCEOracle.getCount();
+        long eq = l.statsEQOracle.getCount();
+        log.info("Queries in round " + rounds.getCount() + ": " + (mem - memQueries) + " membership, " + (ce - ceQueries) + " counterexample processing, " + (eq - eqQueries) + " equivalence (to SUL)");
+        memQueries = mem;
+        ceQueries = ce;
+        eqQueries = eq;
+    }
+
     private void profileStart(String taskname) {
         if (profile) {
             SimpleProfiler.start(taskname);
@@ -167,6 +254,34 @@ public void setProfile(boolean profile) {
         this.profile = profile;
     }
 
+    /**
+     * @param ceProcessor the processing applied to counterexamples before refinement, or null to use them as found
+     */
+    public void setCounterexampleProcessor(CounterexampleProcessor<String, String> ceProcessor) {
+        this.ceProcessor = ceProcessor;
+    }
+
+    /**
+     * @param warmStart the previous model to start learning from, or null to start from scratch
+     */
+    public void setWarmStart(WarmStart<String, String> warmStart) {
+        this.warmStart = warmStart;
+    }
+
+    /**
+     * @return the reason learning was stopped before equivalence was established, or null if it was not stopped
+     */
+    public String getBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    /**
+     * @return true if learning was stopped by the budget of a single equivalence round instead of the total budget
+     */
+    public boolean isRoundBudgetExhausted() {
+        return roundBudgetExhausted;
+    }
+
     /**
      * @return the rounds
      */
@@ -0,0 +1,61 @@
+package learner;
+
+import de.learnlib.api.MembershipOracle;
+import de.learnlib.api.Query;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.Word;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Membership oracle answering queries that only contain inputs of a previously learned model from that model. Other
+ * queries are passed on to the delegate in one batch.
+ * <p>
+ * Used to extend a model with new input symbols: the behaviour on the old inputs is assumed not to have changed, so
+ * only queries containing a new symbol are sent to the target.
+ */
+public class PreviousModelOracle<I, O> implements MembershipOracle<I, Word<O>> {
+
+    private final CompactMealy<I, O> model;
+    private final MembershipOracle<I, Word<O>> delegate;
+
+    private long answered = 0;
+
+    public PreviousModelOracle(CompactMealy<I, O> model, MembershipOracle<I, Word<O>> delegate) {
+        this.model = model;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void processQueries(Collection<? extends Query<I, Word<O>>> queries) {
+        List<Query<I, Word<O>>> remaining = new ArrayList<>();
+        for (Query<I, Word<O>> query : queries) {
+            if (isKnown(query.getInput())) {
+                query.answer(model.computeOutput(query.getInput()).subWord(query.getPrefix().length()));
+                answered++;
+            } else {
+                remaining.add(query);
+            }
+        }
+
+        if (!remaining.isEmpty())
+            delegate.processQueries(remaining);
+    }
+
+    private boolean isKnown(Word<I> input) {
+        for (I symbol : input) {
+            if (!model.getInputAlphabet().contains(symbol))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of queries answered by the previous model
+     */
+    public long getAnswered() {
+        return answered;
+    }
+}
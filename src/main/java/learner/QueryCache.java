@@ -0,0 +1,332 @@
+package learner;
+
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe trie of answered queries, shared by the membership and equivalence oracles.
+ * <p>
+ * Every node stores the output of the last input of the word leading to it, so any prefix of an answered query can be
+ * answered from the cache as well. Lookups do not lock, children are kept in concurrent maps. When a new answer
+ * disagrees with the cache a {@link ConflictException} is thrown, the cached answer is only overwritten by
+ * {@link #replace}. The conflict is logged and counted, {@link QueryCacheOracle} catches it and executes the query
+ * again, or answers with the majority of repeated executions if a {@link MajorityVoteOracle} is configured.
+ * <p>
+ * The number of nodes can be limited. When the limit is exceeded, the least recently used half of the nodes is
+ * removed. A node is always used at least as recently as its children, so this removes complete subtrees.
+ * <p>
+ * The cache can be written to a file and loaded in a later run, for instance after symbols were added to the
+ * alphabet, so only queries with the new symbols have to be sent to the target.
+ */
+public class QueryCache<I, O> {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryCache.class);
+
+    /**
+     * Thrown when the target gives a different answer than before for the same input, which means that it is not
+     * deterministic.
+     */
+    public static class ConflictException extends RuntimeException {
+        public ConflictException(Word<?> input, Word<?> cached, Word<?> output) {
+            super("Nondeterministic behaviour for input " + input + ": cached output " + cached + ", new output " + output);
+        }
+    }
+
+    private static class Node<I, O> {
+        volatile O output;
+        final ConcurrentHashMap<I, Node<I, O>> children = new ConcurrentHashMap<>();
+        volatile long lastAccess;
+
+        Node(O output, long lastAccess) {
+            this.output = output;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final Node<I, O> root = new Node<>(null, 0);
+    private final O errorOutput;
+    private final long maxNodes;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong nodes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong replaced = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    private final Object evictionLock = new Object();
+
+    /**
+     * Constructor.
+     *
+     * @param errorOutput output after which the target only produces this output, or null
+     * @param maxNodes    maximum number of nodes, or 0 for no limit
+     */
+    public QueryCache(O errorOutput, long maxNodes) {
+        this.errorOutput = errorOutput;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * @return the output for the complete input, or null if it is not in the cache
+     */
+    public Word<O> lookup(Word<I> input) {
+        long stamp = clock.incrementAndGet();
+        WordBuilder<O> output = new WordBuilder<>(input.length());
+
+        Node<I, O> node = root;
+        root.lastAccess = stamp;
+        for (I symbol : input) {
+            if (isError(node)) {
+                output.append(errorOutput);
+                continue;
+            }
+
+            node = node.children.get(symbol);
+            if (node == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            node.lastAccess = stamp;
+            output.append(node.output);
+        }
+
+        hits.incrementAndGet();
+        return output.toWord();
+    }
+
+    /**
+     * @return the cached output for the longest prefix of the input that is in the cache, does not count as a hit or
+     * miss
+     */
+    public Word<O> lookupPrefix(Word<I> input) {
+        WordBuilder<O> output = new WordBuilder<>(input.length());
+        Node<I, O> node = root;
+        for (I symbol : input) {
+            if (isError(node)) {
+                output.append(errorOutput);
+                continue;
+            }
+
+            node = node.children.get(symbol);
+            if (node == null)
+                break;
+            output.append(node.output);
+        }
+        return output.toWord();
+    }
+
+    /**
+     * Add an answer to the cache.
+     *
+     * @throws ConflictException if the answer differs from the cache
+     */
+    public void insert(Word<I> input, Word<O> output) {
+        long stamp = clock.incrementAndGet();
+        WordBuilder<O> cached = new WordBuilder<>(input.length());
+
+        Node<I, O> node = root;
+        root.lastAccess = stamp;
+        for (int i = 0; i < input.length(); i++) {
+            O out = output.getSymbol(i);
+
+            if (isError(node)) {
+                cached.append(errorOutput);
+                if (!Objects.equals(out, errorOutput))
+                    conflict(input.prefix(i + 1), cached.toWord(), output.prefix(i + 1));
+                continue;
+            }
+
+            Node<I, O> child = node.children.get(input.getSymbol(i));
+            if (child == null) {
+                Node<I, O> created = new Node<>(out, stamp);
+                child = node.children.putIfAbsent(input.getSymbol(i), created);
+                if (child == null) {
+                    child = created;
+                    nodes.incrementAndGet();
+                }
+            }
+
+            cached.append(child.output);
+            if (!Objects.equals(child.output, out))
+                conflict(input.prefix(i + 1), cached.toWord(), output.prefix(i + 1));
+
+            child.lastAccess = stamp;
+            node = child;
+        }
+
+        if (maxNodes > 0 && nodes.get() > maxNodes)
+            evict();
+    }
+
+    /**
+     * Overwrite the cached answer, for instance with the majority answer after a conflict. The cached outputs of
+     * longer words are kept.
+     */
+    public void replace(Word<I> input, Word<O> output) {
+        long stamp = clock.incrementAndGet();
+        Node<I, O> node = root;
+        root.lastAccess = stamp;
+        for (int i = 0; i < input.length(); i++) {
+            O out = output.getSymbol(i);
+            Node<I, O> child = node.children.get(input.getSymbol(i));
+            if (child == null) {
+                Node<I, O> created = new Node<>(out, stamp);
+                child = node.children.putIfAbsent(input.getSymbol(i), created);
+                if (child == null) {
+                    child = created;
+                    nodes.incrementAndGet();
+                }
+            }
+
+            if (!Objects.equals(child.output, out)) {
+                log.warn("Replacing cached output " + child.output + " for input " + input.prefix(i + 1) + " by " + out);
+                child.output = out;
+                replaced.incrementAndGet();
+            }
+            child.lastAccess = stamp;
+            node = child;
+        }
+
+        if (maxNodes > 0 && nodes.get() > maxNodes)
+            evict();
+    }
+
+    private boolean isError(Node<I, O> node) {
+        return errorOutput != null && node != root && Objects.equals(node.output, errorOutput);
+    }
+
+    private void conflict(Word<I> input, Word<O> cached, Word<O> output) {
+        conflicts.incrementAndGet();
+        ConflictException e = new ConflictException(input, cached, output);
+        log.warn(e.getMessage());
+        throw e;
+    }
+
+    /*
+     * Remove the least recently used half of the nodes
+     */
+    private void evict() {
+        synchronized (evictionLock) {
+            if (nodes.get() <= maxNodes)
+                return;
+
+            List<Long> stamps = new ArrayList<>();
+            Deque<Node<I, O>> stack = new ArrayDeque<>(root.children.values());
+            while (!stack.isEmpty()) {
+                Node<I, O> node = stack.pop();
+                stamps.add(node.lastAccess);
+                stack.addAll(node.children.values());
+            }
+            Collections.sort(stamps);
+            long cutoff = stamps.get(stamps.size() - (int) Math.max(1, maxNodes / 2));
+
+            long removed = 0;
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Node<I, O> node = stack.pop();
+                Iterator<Node<I, O>> it = node.children.values().iterator();
+                while (it.hasNext()) {
+                    Node<I, O> child = it.next();
+                    if (child.lastAccess < cutoff) {
+                        it.remove();
+                        removed += size(child);
+                    } else {
+                        stack.push(child);
+                    }
+                }
+            }
+
+            nodes.addAndGet(-removed);
+            evicted.addAndGet(removed);
+            log.info("Evicted " + removed + " nodes from query cache, " + nodes.get() + " nodes left");
+        }
+    }
+
+    private static <I, O> long size(Node<I, O> node) {
+        long size = 0;
+        Deque<Node<I, O>> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node<I, O> n = stack.pop();
+            size++;
+            stack.addAll(n.children.values());
+        }
+        return size;
+    }
+
+    /**
+     * Write all nodes depth-first, one line per node with its depth, input and output separated by tabs.
+     */
+    public void write(String filename) throws IOException {
+        try (PrintStream out = new PrintStream(filename)) {
+            write(out, root, 0);
+        }
+    }
+
+    private void write(PrintStream out, Node<I, O> node, int depth) {
+        for (Map.Entry<I, Node<I, O>> child : node.children.entrySet()) {
+            out.println((depth + 1) + "\t" + child.getKey() + "\t" + child.getValue().output);
+            write(out, child.getValue(), depth + 1);
+        }
+    }
+
+    /**
+     * Add the queries in a file written by {@link #write(String)} to a cache of string symbols.
+     *
+     * @throws ConflictException if the file contradicts the answers in the cache
+     */
+    public static void load(QueryCache<String, String> cache, String filename) throws Exception {
+        List<String> inputs = new ArrayList<>();
+        List<String> outputs = new ArrayList<>();
+        long words = 0;
+
+        List<String> lines = Files.readAllLines(Paths.get(filename));
+        for (int i = 0; i < lines.size(); i++) {
+            String[] fields = lines.get(i).split("\t", 3);
+            if (fields.length != 3)
+                throw new Exception("Unknown line in " + filename + ": " + lines.get(i));
+
+            int depth = Integer.parseInt(fields[0]);
+            inputs.subList(depth - 1, inputs.size()).clear();
+            outputs.subList(depth - 1, outputs.size()).clear();
+            inputs.add(fields[1]);
+            outputs.add(fields[2]);
+
+            // Only insert leaves, their prefixes are added with them
+            boolean leaf = i + 1 == lines.size() || Integer.parseInt(lines.get(i + 1).split("\t", 2)[0]) <= depth;
+            if (leaf) {
+                cache.insert(Word.fromList(inputs), Word.fromList(outputs));
+                words++;
+            }
+        }
+        log.info("Loaded " + words + " queries into query cache from " + filename);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getConflicts() {
+        return conflicts.get();
+    }
+
+    public String getSummary() {
+        return "Query cache: " + nodes.get() + " nodes, " + hits.get() + " hits, " + misses.get() + " misses, " + conflicts.get() + " conflicts, " + replaced.get() + " outputs replaced, " + evicted.get() + " nodes evicted";
+    }
+}
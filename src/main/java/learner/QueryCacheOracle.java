@@ -0,0 +1,107 @@
+package learner;
+
+import de.learnlib.api.MembershipOracle;
+import de.learnlib.api.Query;
+import de.learnlib.oracles.DefaultQuery;
+import net.automatalib.words.Word;
+
+import java.util.*;
+
+/**
+ * Membership oracle answering queries from a {@link QueryCache} where possible. The remaining queries are passed on to
+ * the delegate in one batch, and their answers are added to the cache.
+ * <p>
+ * If an answer conflicts with the cache, for instance because the target answered differently while a query with the
+ * same prefix was executed in parallel, the conflict is logged and counted by the cache and the query is executed
+ * again, at most {@value #CONFLICT_RETRIES} times. The first answer that agrees with the cache is used. If none does,
+ * the {@link QueryCache.ConflictException} is thrown, as the target is nondeterministic and no answer can be trusted.
+ * Answers are never combined from different executions. If a majority vote oracle is set, the query is repeated
+ * instead, and the majority answer replaces the cached answer.
+ */
+public class QueryCacheOracle<I, O> implements MembershipOracle<I, Word<O>> {
+
+    // Number of times a query conflicting with the cache is executed again without a majority vote oracle
+    public static final int CONFLICT_RETRIES = 2;
+
+    private final QueryCache<I, O> cache;
+    private final MembershipOracle<I, Word<O>> delegate;
+    private MajorityVoteOracle<I, O> resolver = null;
+
+    public QueryCacheOracle(QueryCache<I, O> cache, MembershipOracle<I, Word<O>> delegate) {
+        this.cache = cache;
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param resolver oracle deciding conflicts between the cache and new answers by majority vote, or null to execute
+     *                 conflicting queries again
+     */
+    public void setResolver(MajorityVoteOracle<I, O> resolver) {
+        this.resolver = resolver;
+    }
+
+    @Override
+    public void processQueries(Collection<? extends Query<I, Word<O>>> queries) {
+        List<Query<I, Word<O>>> misses = new ArrayList<>();
+        for (Query<I, Word<O>> query : queries) {
+            Word<O> output = cache.lookup(query.getInput());
+            if (output == null)
+                misses.add(query);
+            else
+                query.answer(output.subWord(query.getPrefix().length()));
+        }
+
+        if (misses.isEmpty())
+            return;
+
+        // Ask for the output of the complete input, so the whole word can be cached
+        Map<Word<I>, DefaultQuery<I, Word<O>>> unique = new LinkedHashMap<>();
+        for (Query<I, Word<O>> query : misses) {
+            if (!unique.containsKey(query.getInput()))
+                unique.put(query.getInput(), new DefaultQuery<I, Word<O>>(query.getInput()));
+        }
+        delegate.processQueries(unique.values());
+
+        Map<Word<I>, Word<O>> answers = new HashMap<>();
+        for (DefaultQuery<I, Word<O>> query : unique.values()) {
+            answers.put(query.getInput(), insert(query.getInput(), query.getOutput()));
+        }
+        for (Query<I, Word<O>> query : misses) {
+            query.answer(answers.get(query.getInput()).subWord(query.getPrefix().length()));
+        }
+    }
+
+    /*
+     * Add the answer to the cache, and return the answer to give to the learner
+     */
+    private Word<O> insert(Word<I> input, Word<O> output) {
+        try {
+            cache.insert(input, output);
+            return output;
+        } catch (QueryCache.ConflictException e) {
+            if (resolver != null) {
+                Word<O> majority = resolver.confirm(input);
+                cache.replace(input, majority);
+                return majority;
+            }
+            return retry(input, e);
+        }
+    }
+
+    /*
+     * Execute a conflicting query again until an answer agrees with the cache
+     */
+    private Word<O> retry(Word<I> input, QueryCache.ConflictException conflict) {
+        for (int i = 0; i < CONFLICT_RETRIES; i++) {
+            DefaultQuery<I, Word<O>> query = new DefaultQuery<>(input);
+            delegate.processQueries(Collections.singleton(query));
+            try {
+                cache.insert(input, query.getOutput());
+                return query.getOutput();
+            } catch (QueryCache.ConflictException e) {
+                conflict = e;
+            }
+        }
+        throw conflict;
+    }
+}
@@ -0,0 +1,143 @@
+package learner;
+
+import tlstestservice.Mutator;
+import tlstestservice.TLS;
+import tlstestservice.Utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Applies one random mutation to the first message or record that is sent, and leaves the rest unchanged.
+ * <p>
+ * A message is mutated before the MAC is added and it is encrypted, so the target parses the mutated message even in
+ * an encrypted session. A record is mutated as it is sent, including the record header. All choices are made with the
+ * given random generator, so the same seed gives the same mutation.
+ */
+public class RandomMutator implements Mutator {
+
+    public enum Operator {
+        // Flip 1 to 8 random bits
+        FLIP,
+        // Set a random byte to a boundary value
+        BOUNDARY,
+        // Insert 1 to 16 random bytes
+        INSERT,
+        // Delete a random range of bytes
+        DELETE,
+        // Cut off at a random position
+        TRUNCATE,
+        // Set the length field of the handshake message or record to a boundary value
+        LENGTH,
+        // Change the handshake message type or record content type
+        TYPE,
+        // Send the message or record twice
+        DUPLICATE
+    }
+
+    private static final byte[] BOUNDARY_VALUES = {0x00, 0x01, 0x7f, (byte) 0x80, (byte) 0xfe, (byte) 0xff};
+
+    private final Random random;
+    private final boolean record;
+    private final Operator operator;
+    private String description = null;
+
+    /**
+     * @param record true to mutate the first record as it is sent, false to mutate the first message
+     */
+    public RandomMutator(Random random, boolean record) {
+        this.random = random;
+        this.record = record;
+        this.operator = Operator.values()[random.nextInt(Operator.values().length)];
+    }
+
+    @Override
+    public byte[] mutateMessage(byte contentType, byte[] message) {
+        if (record || description != null)
+            return message;
+        // Handshake messages have a 1 byte type and a 3 byte length, other messages are not structured
+        boolean handshake = contentType == TLS.CONTENT_TYPE_HANDSHAKE;
+        return mutate(message, handshake ? 1 : -1, handshake ? 3 : 0);
+    }
+
+    @Override
+    public byte[] mutateRecord(byte[] bytes) {
+        if (!record || description != null)
+            return bytes;
+        // Content type, 2 bytes version and 2 bytes length
+        return mutate(bytes, 3, 2);
+    }
+
+    /*
+     * Apply the operator, given the position (or -1) and size of the length field after the type byte
+     */
+    private byte[] mutate(byte[] data, int lengthOffset, int lengthSize) {
+        Operator op = operator;
+        if (data.length == 0 && op != Operator.INSERT)
+            op = Operator.INSERT;
+        if (op == Operator.LENGTH && lengthOffset < 0)
+            op = Operator.BOUNDARY;
+
+        byte[] result;
+        int position = data.length == 0 ? 0 : random.nextInt(data.length);
+        switch (op) {
+            case FLIP:
+                result = data.clone();
+                int bits = 1 + random.nextInt(8);
+                for (int i = 0; i < bits; i++) {
+                    int bit = random.nextInt(result.length * 8);
+                    result[bit / 8] ^= 1 << (bit % 8);
+                }
+                description = "flip " + bits + " bits";
+                break;
+            case BOUNDARY:
+                result = data.clone();
+                result[position] = BOUNDARY_VALUES[random.nextInt(BOUNDARY_VALUES.length)];
+                description = "set byte " + position;
+                break;
+            case INSERT:
+                byte[] inserted = new byte[1 + random.nextInt(16)];
+                random.nextBytes(inserted);
+                result = Utils.concat(Utils.concat(Arrays.copyOfRange(data, 0, position), inserted), Arrays.copyOfRange(data, position, data.length));
+                description = "insert " + inserted.length + " bytes at " + position;
+                break;
+            case DELETE:
+                int count = 1 + random.nextInt(data.length - position);
+                result = Utils.concat(Arrays.copyOfRange(data, 0, position), Arrays.copyOfRange(data, position + count, data.length));
+                description = "delete " + count + " bytes at " + position;
+                break;
+            case TRUNCATE:
+                result = Arrays.copyOfRange(data, 0, position);
+                description = "truncate at " + position;
+                break;
+            case LENGTH:
+                result = data.clone();
+                byte value = BOUNDARY_VALUES[random.nextInt(BOUNDARY_VALUES.length)];
+                for (int i = lengthOffset; i < lengthOffset + lengthSize && i < result.length; i++) {
+                    result[i] = value;
+                }
+                description = "set length bytes to " + String.format("%02x", value & 0xff);
+                break;
+            case TYPE:
+                result = data.clone();
+                result[0] = (byte) random.nextInt(256);
+                description = "set type to " + String.format("%02x", result[0] & 0xff);
+                break;
+            case DUPLICATE:
+            default:
+                result = Utils.concat(data, data);
+                description = "duplicate";
+                break;
+        }
+
+        description = (record ? "record: " : "message: ") + description + " (" + Utils.bytesToHexString(result) + ")";
+        return result;
+    }
+
+    /**
+     * @return the applied mutation with the bytes that were sent, or null if nothing was mutated
+     */
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,149 @@
+package learner;
+
+import de.learnlib.api.EquivalenceOracle;
+import de.learnlib.api.SUL;
+import de.learnlib.oracles.DefaultQuery;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Equivalence oracle that performs random walks on the target, one step at a time.
+ * <p>
+ * Every output is compared with the hypothesis as soon as it is received, so a walk stops at the first difference
+ * instead of running a complete random word. A walk is restarted with a fixed probability after every step, and
+ * always after the target closed the connection. Inputs are chosen among the transitions of the hypothesis that were
+ * visited least, so the walks spread over the whole hypothesis.
+ */
+public class RandomWalkEQOracle<I, O> implements EquivalenceOracle.MealyEquivalenceOracle<I, O>, CoverageReporter {
+
+    private static final Logger log = LoggerFactory.getLogger(RandomWalkEQOracle.class);
+
+    private final SUL<I, O> sul;
+    private final double restartProbability;
+    private final long maxSteps;
+    private final Random random;
+
+    private long walks = 0;
+    private long steps = 0;
+    private String coverage = null;
+
+    /**
+     * Constructor.
+     *
+     * @param sul                the target, used directly instead of through a membership oracle
+     * @param restartProbability probability to reset the target after every step
+     * @param maxSteps           maximum number of steps per call before the hypothesis is accepted
+     * @param random             source of randomness
+     */
+    public RandomWalkEQOracle(SUL<I, O> sul, double restartProbability, long maxSteps, Random random) {
+        this.sul = sul;
+        this.restartProbability = restartProbability;
+        this.maxSteps = maxSteps;
+        this.random = random;
+    }
+
+    @Override
+    public DefaultQuery<I, Word<O>> findCounterExample(MealyMachine<?, I, ?, O> hypothesis, Collection<? extends I> inputs) {
+        CompactHypothesis<I, O> hyp = CompactHypothesis.create(hypothesis, inputs);
+        int[] visits = new int[hyp.size() * hyp.numInputs()];
+        int covered = 0;
+
+        long roundSteps = 0;
+        long roundWalks = 0;
+        DefaultQuery<I, Word<O>> ce = null;
+
+        try {
+            while (ce == null && roundSteps < maxSteps) {
+                sul.reset();
+                roundWalks++;
+
+                WordBuilder<I> wbIn = new WordBuilder<>();
+                WordBuilder<O> wbOut = new WordBuilder<>();
+                int state = hyp.getInitialState();
+
+                while (roundSteps < maxSteps) {
+                    int i = leastVisited(hyp, visits, state);
+                    int transition = state * hyp.numInputs() + i;
+                    if (visits[transition]++ == 0)
+                        covered++;
+
+                    I input = hyp.getInputs().get(i);
+                    O output = sul.step(input);
+                    wbIn.append(input);
+                    wbOut.append(output);
+                    roundSteps++;
+
+                    if (!Objects.equals(output, hyp.getOutput(state, i))) {
+                        ce = new DefaultQuery<>(wbIn.toWord());
+                        ce.answer(wbOut.toWord());
+                        break;
+                    }
+
+                    state = hyp.getSuccessor(state, i);
+                    if (TestSuiteRunner.isConnectionClosed(output) || random.nextDouble() < restartProbability)
+                        break;
+                }
+
+                log.info("Random walk {}: {} / {}", walks + roundWalks, wbIn.toWord(), wbOut.toWord());
+            }
+        } catch (Budget.ExhaustedException e) {
+            walks += roundWalks;
+            steps += roundSteps;
+            logCoverage("budget exhausted", roundWalks, roundSteps, covered, visits.length);
+            throw e;
+        }
+
+        walks += roundWalks;
+        steps += roundSteps;
+        logCoverage(ce == null ? "no counterexample found" : "found counterexample", roundWalks, roundSteps, covered, visits.length);
+
+        return ce;
+    }
+
+    private void logCoverage(String result, long roundWalks, long roundSteps, int covered, int transitions) {
+        coverage = "Random walks: " + roundWalks + " walks, " + roundSteps + " steps, covered " + covered + " of " + transitions + " transitions, " + result;
+        log.info(coverage);
+    }
+
+    @Override
+    public String getCoverage() {
+        return coverage;
+    }
+
+    /*
+     * Choose uniformly among the inputs whose transition from the given state was visited least
+     */
+    private int leastVisited(CompactHypothesis<I, O> hyp, int[] visits, int state) {
+        int min = Integer.MAX_VALUE;
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < hyp.numInputs(); i++) {
+            int count = visits[state * hyp.numInputs() + i];
+            if (count < min) {
+                min = count;
+                candidates.clear();
+            }
+            if (count == min)
+                candidates.add(i);
+        }
+        return candidates.get(random.nextInt(candidates.size()));
+    }
+
+    /**
+     * @return the number of walks (resets of the target) performed in total
+     */
+    public long getWalks() {
+        return walks;
+    }
+
+    /**
+     * @return the number of steps performed on the target in total
+     */
+    public long getSteps() {
+        return steps;
+    }
+}
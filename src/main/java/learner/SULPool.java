@@ -0,0 +1,44 @@
+package learner;
+
+import de.learnlib.api.SUL;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Additional SUL instances that are not used by the learner, shared by the components that execute queries in
+ * parallel. Every instance is used by one thread at a time.
+ */
+public class SULPool<I, O> {
+
+    private final BlockingQueue<SUL<I, O>> idle;
+    private final int size;
+
+    public SULPool(List<? extends SUL<I, O>> suls) {
+        this.idle = new LinkedBlockingQueue<>(suls);
+        this.size = suls.size();
+    }
+
+    /**
+     * @return an idle SUL, waiting until one is released if necessary
+     */
+    public SUL<I, O> acquire() throws InterruptedException {
+        return idle.take();
+    }
+
+    /**
+     * @return an idle SUL, or null if all SULs are in use
+     */
+    public SUL<I, O> tryAcquire() {
+        return idle.poll();
+    }
+
+    public void release(SUL<I, O> sul) {
+        idle.add(sul);
+    }
+
+    public int size() {
+        return size;
+    }
+}
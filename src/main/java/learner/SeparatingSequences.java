@@ -0,0 +1,235 @@
+package learner;
+
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+import java.util.*;
+
+/**
+ * Computes per-state distinguishing suffixes for a hypothesis, as an alternative to a characterizing set.
+ * <p>
+ * An adaptive distinguishing sequence identifies every state with a single test: the inputs applied depend on the
+ * outputs received so far, so for a known hypothesis state this results in one suffix per state. Not every
+ * hypothesis has one. A separating family always exists: for every state a set of suffixes such that every pair of
+ * states is separated by a suffix that is in the sets of both states.
+ */
+public class SeparatingSequences<I, O> {
+
+    // Maximum number of state sets explored when searching for a splitting word of a set of states
+    private static final int MAX_SEARCH = 10000;
+
+    private final CompactHypothesis<I, O> hypothesis;
+    private final int size;
+    private final int numInputs;
+
+    // Shortest separating word for every pair of states, indexed by p * size + q
+    private Word<I>[] separatingWords = null;
+
+    public SeparatingSequences(CompactHypothesis<I, O> hypothesis) {
+        this.hypothesis = hypothesis;
+        this.size = hypothesis.size();
+        this.numInputs = hypothesis.numInputs();
+    }
+
+    /**
+     * Compute an adaptive distinguishing sequence by repeatedly searching for the shortest word that splits a set of
+     * states on its output, without mapping two states with the same output to the same state.
+     *
+     * @return for every state the suffix of the adaptive distinguishing sequence for that state, or null if no
+     * adaptive distinguishing sequence was found
+     */
+    public List<Word<I>> adaptiveDistinguishingSequence() {
+        List<Word<I>> result = new ArrayList<>(Collections.<Word<I>>nCopies(size, null));
+        int[] initials = new int[size];
+        for (int i = 0; i < size; i++) {
+            initials[i] = i;
+        }
+
+        if (!buildAds(initials, initials.clone(), Word.<I>epsilon(), result))
+            return null;
+        return result;
+    }
+
+    private boolean buildAds(int[] initials, int[] current, Word<I> word, List<Word<I>> result) {
+        if (initials.length == 1) {
+            result.set(initials[0], word);
+            return true;
+        }
+
+        Word<I> split = findSplittingWord(current);
+        if (split == null)
+            return false;
+
+        // Group the states on their output for the splitting word
+        Map<Word<O>, List<Integer>> groups = new LinkedHashMap<>();
+        int[] next = new int[current.length];
+        for (int k = 0; k < current.length; k++) {
+            WordBuilder<O> out = new WordBuilder<>();
+            next[k] = hypothesis.appendOutputs(current[k], split, out);
+            List<Integer> group = groups.get(out.toWord());
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(out.toWord(), group);
+            }
+            group.add(k);
+        }
+
+        Word<I> extended = word.concat(split);
+        for (List<Integer> group : groups.values()) {
+            int[] groupInitials = new int[group.size()];
+            int[] groupCurrent = new int[group.size()];
+            for (int g = 0; g < group.size(); g++) {
+                groupInitials[g] = initials[group.get(g)];
+                groupCurrent[g] = next[group.get(g)];
+            }
+            if (!buildAds(groupInitials, groupCurrent, extended, result))
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * Breadth-first search for the shortest word that produces different outputs for some of the given states, while
+     * all states stay distinguishable: states producing the same output may not go to the same state
+     */
+    private Word<I> findSplittingWord(int[] states) {
+        Map<Set<Integer>, Word<I>> visited = new HashMap<>();
+        Deque<int[]> queue = new ArrayDeque<>();
+        visited.put(toSet(states), Word.<I>epsilon());
+        queue.add(states);
+
+        while (!queue.isEmpty() && visited.size() < MAX_SEARCH) {
+            int[] current = queue.poll();
+            Word<I> word = visited.get(toSet(current));
+
+            for (int i = 0; i < numInputs; i++) {
+                Map<O, Set<Integer>> successorsPerOutput = new HashMap<>();
+                boolean valid = true;
+                int[] next = new int[current.length];
+                for (int k = 0; k < current.length && valid; k++) {
+                    O output = hypothesis.getOutput(current[k], i);
+                    next[k] = hypothesis.getSuccessor(current[k], i);
+                    Set<Integer> successors = successorsPerOutput.get(output);
+                    if (successors == null) {
+                        successors = new HashSet<>();
+                        successorsPerOutput.put(output, successors);
+                    }
+                    valid = successors.add(next[k]);
+                }
+
+                if (!valid)
+                    continue;
+
+                Word<I> extended = word.append(hypothesis.getInputs().get(i));
+                if (successorsPerOutput.size() > 1)
+                    return extended;
+
+                Set<Integer> key = toSet(next);
+                if (!visited.containsKey(key)) {
+                    visited.put(key, extended);
+                    queue.add(next);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Set<Integer> toSet(int[] states) {
+        Set<Integer> set = new HashSet<>();
+        for (int state : states) {
+            set.add(state);
+        }
+        return set;
+    }
+
+    /**
+     * @return for every state a set of suffixes, such that every pair of states is separated by a suffix in both sets.
+     * Suffixes that are a prefix of another suffix of the same state are left out.
+     */
+    public List<List<Word<I>>> separatingFamily() {
+        List<List<Word<I>>> result = new ArrayList<>(size);
+        for (int p = 0; p < size; p++) {
+            Set<Word<I>> words = new LinkedHashSet<>();
+            for (int q = 0; q < size; q++) {
+                Word<I> word = getSeparatingWord(p, q);
+                if (p != q && word != null)
+                    words.add(word);
+            }
+            result.add(removePrefixes(words));
+        }
+        return result;
+    }
+
+    /**
+     * @return the shortest word separating two states, or null if they are equivalent
+     */
+    public Word<I> getSeparatingWord(int p, int q) {
+        if (separatingWords == null)
+            computeSeparatingWords();
+        return separatingWords[p * size + q];
+    }
+
+    /*
+     * Pairs are separated by a single input, or by an input with the same output leading to a pair separated in a
+     * previous iteration. Iterating until nothing changes gives the shortest separating words.
+     */
+    @SuppressWarnings("unchecked")
+    private void computeSeparatingWords() {
+        separatingWords = (Word<I>[]) new Word[size * size];
+
+        for (int p = 0; p < size; p++) {
+            for (int q = p + 1; q < size; q++) {
+                for (int i = 0; i < numInputs; i++) {
+                    if (!Objects.equals(hypothesis.getOutput(p, i), hypothesis.getOutput(q, i))) {
+                        setSeparatingWord(p, q, Word.fromLetter(hypothesis.getInputs().get(i)));
+                        break;
+                    }
+                }
+            }
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Word<I>[] previous = separatingWords.clone();
+            for (int p = 0; p < size; p++) {
+                for (int q = p + 1; q < size; q++) {
+                    if (previous[p * size + q] != null)
+                        continue;
+
+                    for (int i = 0; i < numInputs; i++) {
+                        Word<I> word = previous[hypothesis.getSuccessor(p, i) * size + hypothesis.getSuccessor(q, i)];
+                        if (word != null) {
+                            setSeparatingWord(p, q, word.prepend(hypothesis.getInputs().get(i)));
+                            changed = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void setSeparatingWord(int p, int q, Word<I> word) {
+        separatingWords[p * size + q] = word;
+        separatingWords[q * size + p] = word;
+    }
+
+    private static <I> List<Word<I>> removePrefixes(Collection<Word<I>> words) {
+        List<Word<I>> result = new ArrayList<>();
+        for (Word<I> word : words) {
+            boolean prefix = false;
+            for (Word<I> other : words) {
+                if (other.length() > word.length() && other.prefix(word.length()).equals(word)) {
+                    prefix = true;
+                    break;
+                }
+            }
+            if (!prefix)
+                result.add(word);
+        }
+        if (result.isEmpty())
+            result.add(Word.<I>epsilon());
+        return result;
+    }
+}
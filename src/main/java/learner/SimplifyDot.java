@@ -9,6 +9,9 @@
 
 /**
  * Simplify Graphviz dot file
+ * <p>
+ * Only merges edges on adjacent lines. The final model is simplified by {@link ModelSimplifier}, which works on the
+ * model itself.
  */
 public class SimplifyDot {
     public final static Pattern p = Pattern.compile("^\\s*(\\w+ -> \\w+) \\[label=\\\"(.+)\\\"\\];$");
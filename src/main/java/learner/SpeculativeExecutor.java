@@ -0,0 +1,230 @@
+package learner;
+
+import de.learnlib.api.SUL;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs likely test words of the next equivalence round on additional SUL instances while the learner refines the
+ * hypothesis, and stores the answers in the shared {@link QueryCache}.
+ * <p>
+ * When a counterexample is found, the states it passes through in the current hypothesis are probably the ones that
+ * will be split. For every prefix of the counterexample and every access sequence of these states, the transitions to
+ * one and two inputs further are followed by the characterizing set of the current hypothesis, up to a maximum number
+ * of words. Words that are still waiting when the next counterexample is found are dropped.
+ */
+public class SpeculativeExecutor<I, O> {
+
+    private static final Logger log = LoggerFactory.getLogger(SpeculativeExecutor.class);
+
+    private final QueryCache<I, O> cache;
+    private final SULPool<I, O> pool;
+    private final ExecutorService executor;
+    private final AtomicInteger generation = new AtomicInteger();
+    private final CharacterizingSets<I, O> characterizingSets = new CharacterizingSets<>();
+    private CostModel<I> costModel = null;
+    private int maxWords = 10000;
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong cached = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param pool  SUL instances that are not used by the learner, one thread is started for every instance
+     * @param cache the cache used by the equivalence oracle
+     */
+    public SpeculativeExecutor(SULPool<I, O> pool, QueryCache<I, O> cache) {
+        this.cache = cache;
+        this.pool = pool;
+        this.executor = Executors.newFixedThreadPool(pool.size(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "speculative-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param maxWords maximum number of test words per counterexample
+     */
+    public void setMaxWords(int maxWords) {
+        this.maxWords = maxWords;
+    }
+
+    /**
+     * @param costModel if set, the most expensive words are started first, so all SULs finish at about the same time
+     */
+    public void setCostModel(CostModel<I> costModel) {
+        this.costModel = costModel;
+    }
+
+    /**
+     * Drop the words of the previous counterexample and start executing the words around the given one. The test
+     * words are generated on the executor, only a copy of the hypothesis is made on the calling thread.
+     *
+     * @param hypothesis     the hypothesis the counterexample was found for
+     * @param counterexample input of the counterexample
+     * @param inputs         the input alphabet
+     */
+    public void speculate(MealyMachine<?, I, ?, O> hypothesis, final Word<I> counterexample, Collection<? extends I> inputs) {
+        final int current = generation.incrementAndGet();
+        // The learner refines the hypothesis in place, so the words are generated from a copy
+        final CompactHypothesis<I, O> compact = CompactHypothesis.create(hypothesis, inputs);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation.get() == current)
+                    plan(compact, counterexample, current);
+            }
+        });
+    }
+
+    /*
+     * Generate the test words around the counterexample and queue them, up to the maximum number of words. Words with
+     * one input after the prefixes come first. After an input for which the hypothesis closes the connection, the
+     * characterizing set and longer words are skipped, as in the equivalence oracles.
+     */
+    private synchronized void plan(CompactHypothesis<I, O> hypothesis, Word<I> counterexample, final int current) {
+        characterizingSets.update(hypothesis);
+        List<Word<I>> suffixes = new ArrayList<>(characterizingSets.getCharacterizingSet());
+        if (suffixes.isEmpty())
+            suffixes.add(Word.<I>epsilon());
+
+        Set<Word<I>> prefixes = new LinkedHashSet<>();
+        for (int i = 0; i <= counterexample.length(); i++) {
+            Word<I> prefix = counterexample.prefix(i);
+            prefixes.add(prefix);
+            prefixes.add(characterizingSets.getAccessSequence(hypothesis.getState(hypothesis.getInitialState(), prefix)));
+        }
+
+        Set<Word<I>> words = new LinkedHashSet<>();
+        int skipped = 0;
+        for (int depth = 1; depth <= 2; depth++) {
+            for (Word<I> prefix : prefixes) {
+                if (TestSuiteRunner.isConnectionClosed(hypothesis.computeOutput(prefix)))
+                    continue;
+                skipped += addWords(hypothesis, prefix, depth, suffixes, words);
+            }
+        }
+        if (generation.get() != current)
+            return;
+
+        List<Word<I>> ordered = new ArrayList<>(words);
+        if (costModel != null) {
+            // Longest processing time first: idle SULs take the next word, so the cheap words fill up the end
+            final Map<Word<I>, Double> costs = new HashMap<>();
+            for (Word<I> word : ordered) {
+                costs.put(word, costModel.estimate(word));
+            }
+            Collections.sort(ordered, new Comparator<Word<I>>() {
+                @Override
+                public int compare(Word<I> w1, Word<I> w2) {
+                    return Double.compare(costs.get(w2), costs.get(w1));
+                }
+            });
+        }
+
+        log.info("Speculatively executing " + ordered.size() + " test words around counterexample " + counterexample + (skipped > 0 ? ", " + skipped + " words over the maximum of " + maxWords + " skipped" : ""));
+        for (final Word<I> word : ordered) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (generation.get() != current) {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                    execute(word);
+                }
+            });
+        }
+    }
+
+    /*
+     * Add prefix * middle * suffix for all middle parts of the given length, stopping at a closed connection
+     *
+     * @return the number of words that were not added because the maximum was reached
+     */
+    private int addWords(CompactHypothesis<I, O> hypothesis, Word<I> prefix, int depth, List<Word<I>> suffixes, Set<Word<I>> words) {
+        int skipped = 0;
+        int state = hypothesis.getState(hypothesis.getInitialState(), prefix);
+        for (I input : hypothesis.getInputs()) {
+            Word<I> word = prefix.append(input);
+            boolean closed = TestSuiteRunner.isConnectionClosed(hypothesis.getOutput(state, hypothesis.getInputIndex(input)));
+            if (closed || depth == 1) {
+                for (Word<I> suffix : closed ? Collections.singletonList(Word.<I>epsilon()) : suffixes) {
+                    if (words.size() < maxWords || words.contains(word.concat(suffix)))
+                        words.add(word.concat(suffix));
+                    else
+                        skipped++;
+                }
+            } else {
+                skipped += addWords(hypothesis, word, depth - 1, suffixes, words);
+            }
+        }
+        return skipped;
+    }
+
+    private void execute(Word<I> word) {
+        if (cache.lookup(word) != null) {
+            cached.incrementAndGet();
+            return;
+        }
+
+        SUL<I, O> sul;
+        try {
+            // Other components may borrow SULs from the pool as well
+            sul = pool.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        try {
+            sul.reset();
+            WordBuilder<O> output = new WordBuilder<>(word.length());
+            for (I input : word) {
+                output.append(sul.step(input));
+            }
+            cache.insert(word, output.toWord());
+            executed.incrementAndGet();
+        } catch (Budget.ExhaustedException e) {
+            // Stop speculating, the experiment itself will notice the exhausted budget
+            generation.incrementAndGet();
+        } catch (QueryCache.ConflictException e) {
+            // Already logged by the cache
+        } finally {
+            pool.release(sul);
+        }
+    }
+
+    /**
+     * Drop all waiting words and stop the threads.
+     */
+    public void shutdown() {
+        generation.incrementAndGet();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String getSummary() {
+        return "Speculative execution: " + executed.get() + " words executed, " + cached.get() + " already cached, " + dropped.get() + " dropped";
+    }
+}
@@ -11,6 +11,11 @@
  * @author Joeri de Ruiter (j.deruiter@cs.bham.ac.uk)
  */
 public class TLSConfig {
+    // Learn a model, run as worker daemon executing queries for a learner on another host, compare the target with
+    // the target of another configuration, check that the target conforms to a model, or fuzz the target guided by a
+    // model (learn, worker, differential, conform, fuzz)
+    String mode = "learn";
+
     String target = "server";
     String cmd = null;
     String cmd_version = null;
@@ -24,27 +29,124 @@ public class TLSConfig {
 
     String output_dir = "output";
 
+    // Graphviz formats the models are rendered to (comma-separated, none to only write .dot files), the maximum number
+    // of dot processes, and the maximum number of hypotheses waiting to be written
+    String model_render = "pdf";
+    int model_render_threads = 2;
+    int model_export_queue = 16;
+
+    // Simplified final model: merge sink states with the same outputs, label the largest group of self-loops of a state
+    // "other", and abbreviate outputs longer than the maximum length (0 to never abbreviate)
+    boolean model_simplify_sinks = true;
+    boolean model_simplify_self_loops = true;
+    int model_simplify_max_output = 0;
+
     SimpleAlphabet<String> alphabet = new SimpleAlphabet<>();
 
     String learning_algorithm = "lstar";
+
+    // Budgets for the SUL in total and per equivalence round, times in seconds (0 means no limit)
+    long budget_queries = 0;
+    long budget_steps = 0;
+    long budget_time = 0;
+    long budget_round_queries = 0;
+    long budget_round_steps = 0;
+    long budget_round_time = 0;
+
+    // Merge input symbols that behave the same on a sample of states before learning
+    boolean alphabet_reduction = false;
+    int probe_samples = 10;
+    int probe_depth = 3;
+
+    // Number of additional targets (on the ports following port) used to execute likely test words during refinement,
+    // also used to repeat suspicious queries in parallel. At most speculative_max_words words are generated per
+    // counterexample.
+    int speculative_suls = 0;
+    int speculative_max_words = 10000;
+
+    // Execute queries on worker daemons (comma-separated host:port) instead of the local target, in batches of
+    // worker_batch words, checking the workers every worker_heartbeat ms
+    String workers = null;
+    int worker_batch = 20;
+    int worker_heartbeat = 5000;
+
+    // Used in worker mode: port to listen on and number of targets (on port and the ports following it)
+    int worker_port = 4000;
+    int worker_suls = 1;
+
+    // Used in differential mode: configuration of the second target, test words (wmethod, randomwalk) and model for
+    // the W-method test words (all words up to max_depth + 1 without a model)
+    String differential_config = null;
+    String differential_tests = "wmethod";
+    String differential_model = null;
+
+    // Used in conform mode: model the target should conform to, tested with the modified W/Wp-method test suite of eqtest
+    // on conform_suls targets in parallel (on port and the ports following it)
+    String conform_model = null;
+    int conform_suls = 1;
+
+    // Used in fuzz mode: learned model, access sequences of the states to fuzz (separated by ;, all states by default),
+    // number of targets (on port and the ports following it), number of sessions (0 for no limit), time in ms within
+    // which the target has to answer a new connection after a mutated input, otherwise it counts as a hang, and session
+    // to replay (-1 to fuzz)
+    String fuzz_model = null;
+    String fuzz_states = null;
+    int fuzz_suls = 1;
+    long fuzz_sessions = 0;
+    long fuzz_hang_time = 5000;
+    long fuzz_replay = -1;
+
+    // Maximum number of executions of suspicious queries, the majority answer is used (0 to disable)
+    int nondeterminism_repeats = 0;
+    String nondeterminism_suspicious_output = "Empty";
+
+    // Model learned earlier (for instance of an older version of the target) to start learning from
+    String warm_start_model = null;
+    // Assume the target still behaves like the previous model on its inputs, only query words with new inputs
+    boolean warm_start_trust = false;
+
+    // Counterexample processing before refinement and counterexample handler used by L*
+    String ce_processing = "none";
+    String ce_handler = "classic";
     String eqtest = "randomwords";
     String eqtest_caching = "none";
 
+    // Cache shared by membership and equivalence queries, replaces eqtest_caching if enabled
+    String cache = "none";
+    long cache_max_nodes = 0;
+    // File the cache is loaded from at the start (if it exists) and written to at the end
+    String cache_file = null;
+
+    // Compare outputs of equivalence queries with the hypothesis while executing them and stop at the first difference
+    boolean eqtest_early_abort = false;
+
     // Used for W-Method
     int max_depth = 10;
 
+    // Used for modified W-Method and Wp-Method: heuristics to order the test prefixes by (newstates, divergent, cheap)
+    // and fraction to sample
+    String eqtest_order = "default";
+    double eqtest_sample = 1.0;
+
     // Used for Random words
     int min_length = 5;
     int max_length = 10;
     int nr_queries = 100;
     int seed = 1;
 
+    // Used for Random walk
+    double restart_probability = 0.1;
+    long max_steps = 1000;
+
     public TLSConfig(String filename) throws IOException {
         Properties properties = new Properties();
 
         InputStream input = new FileInputStream(filename);
         properties.load(input);
 
+        if (properties.getProperty("mode") != null && (properties.getProperty("mode").equalsIgnoreCase("learn") || properties.getProperty("mode").equalsIgnoreCase("worker") || properties.getProperty("mode").equalsIgnoreCase("differential") || properties.getProperty("mode").equalsIgnoreCase("conform") || properties.getProperty("mode").equalsIgnoreCase("fuzz")))
+            mode = properties.getProperty("mode").toLowerCase();
+
         if (properties.getProperty("target").equalsIgnoreCase("client") || properties.getProperty("target").equalsIgnoreCase("server"))
             target = properties.getProperty("target").toLowerCase();
 
@@ -72,6 +174,24 @@ public TLSConfig(String filename) throws IOException {
         if (properties.getProperty("output_dir") != null)
             output_dir = properties.getProperty("output_dir");
 
+        if (properties.getProperty("model_render") != null)
+            model_render = properties.getProperty("model_render");
+
+        if (properties.getProperty("model_render_threads") != null)
+            model_render_threads = Integer.parseInt(properties.getProperty("model_render_threads"));
+
+        if (properties.getProperty("model_export_queue") != null)
+            model_export_queue = Integer.parseInt(properties.getProperty("model_export_queue"));
+
+        if (properties.getProperty("model_simplify_sinks") != null)
+            model_simplify_sinks = Boolean.parseBoolean(properties.getProperty("model_simplify_sinks"));
+
+        if (properties.getProperty("model_simplify_self_loops") != null)
+            model_simplify_self_loops = Boolean.parseBoolean(properties.getProperty("model_simplify_self_loops"));
+
+        if (properties.getProperty("model_simplify_max_output") != null)
+            model_simplify_max_output = Integer.parseInt(properties.getProperty("model_simplify_max_output"));
+
         if (properties.getProperty("alphabet") != null) {
             String[] list = properties.getProperty("alphabet").split(" ");
 
@@ -81,18 +201,135 @@ public TLSConfig(String filename) throws IOException {
             }
         }
 
-        if (properties.getProperty("learning_algorithm").equalsIgnoreCase("lstar"))
+        if (properties.getProperty("learning_algorithm").equalsIgnoreCase("lstar") || properties.getProperty("learning_algorithm").equalsIgnoreCase("dhc") || properties.getProperty("learning_algorithm").equalsIgnoreCase("kv"))
             learning_algorithm = properties.getProperty("learning_algorithm").toLowerCase();
 
-        if (properties.getProperty("eqtest").equalsIgnoreCase("wmethod") || properties.getProperty("eqtest").equalsIgnoreCase("wpmethod") || properties.getProperty("eqtest").equalsIgnoreCase("modifiedwmethod") || properties.getProperty("eqtest").equalsIgnoreCase("modifiedwpmethod") || properties.getProperty("eqtest").equalsIgnoreCase("randomwords"))
+        if (properties.getProperty("budget_queries") != null)
+            budget_queries = Long.parseLong(properties.getProperty("budget_queries"));
+
+        if (properties.getProperty("budget_steps") != null)
+            budget_steps = Long.parseLong(properties.getProperty("budget_steps"));
+
+        if (properties.getProperty("budget_time") != null)
+            budget_time = Long.parseLong(properties.getProperty("budget_time"));
+
+        if (properties.getProperty("budget_round_queries") != null)
+            budget_round_queries = Long.parseLong(properties.getProperty("budget_round_queries"));
+
+        if (properties.getProperty("budget_round_steps") != null)
+            budget_round_steps = Long.parseLong(properties.getProperty("budget_round_steps"));
+
+        if (properties.getProperty("budget_round_time") != null)
+            budget_round_time = Long.parseLong(properties.getProperty("budget_round_time"));
+
+        if (properties.getProperty("alphabet_reduction") != null)
+            alphabet_reduction = Boolean.parseBoolean(properties.getProperty("alphabet_reduction"));
+
+        if (properties.getProperty("probe_samples") != null)
+            probe_samples = Integer.parseInt(properties.getProperty("probe_samples"));
+
+        if (properties.getProperty("probe_depth") != null)
+            probe_depth = Integer.parseInt(properties.getProperty("probe_depth"));
+
+        if (properties.getProperty("ce_processing") != null)
+            ce_processing = properties.getProperty("ce_processing").toLowerCase();
+
+        if (properties.getProperty("ce_handler") != null && (properties.getProperty("ce_handler").equalsIgnoreCase("classic") || properties.getProperty("ce_handler").equalsIgnoreCase("suffix1by1") || properties.getProperty("ce_handler").equalsIgnoreCase("rivestschapire") || properties.getProperty("ce_handler").equalsIgnoreCase("shahbaz") || properties.getProperty("ce_handler").equalsIgnoreCase("malerpnueli")))
+            ce_handler = properties.getProperty("ce_handler").toLowerCase();
+
+        if (properties.getProperty("eqtest").equalsIgnoreCase("wmethod") || properties.getProperty("eqtest").equalsIgnoreCase("wpmethod") || properties.getProperty("eqtest").equalsIgnoreCase("modifiedwmethod") || properties.getProperty("eqtest").equalsIgnoreCase("modifiedwpmethod") || properties.getProperty("eqtest").equalsIgnoreCase("randomwords") || properties.getProperty("eqtest").equalsIgnoreCase("randomwalk") || properties.getProperty("eqtest").equalsIgnoreCase("ads"))
             eqtest = properties.getProperty("eqtest").toLowerCase();
 
         if (properties.getProperty("eqtest_caching") != null && (properties.getProperty("eqtest_caching").equalsIgnoreCase("none") || properties.getProperty("eqtest_caching").equalsIgnoreCase("regular") || properties.getProperty("eqtest_caching").equalsIgnoreCase("errormapping")))
             eqtest_caching = properties.getProperty("eqtest_caching").toLowerCase();
 
+        if (properties.getProperty("cache") != null && (properties.getProperty("cache").equalsIgnoreCase("none") || properties.getProperty("cache").equalsIgnoreCase("shared") || properties.getProperty("cache").equalsIgnoreCase("errormapping")))
+            cache = properties.getProperty("cache").toLowerCase();
+
+        if (properties.getProperty("cache_max_nodes") != null)
+            cache_max_nodes = Long.parseLong(properties.getProperty("cache_max_nodes"));
+
+        if (properties.getProperty("speculative_suls") != null)
+            speculative_suls = Integer.parseInt(properties.getProperty("speculative_suls"));
+
+        if (properties.getProperty("speculative_max_words") != null)
+            speculative_max_words = Integer.parseInt(properties.getProperty("speculative_max_words"));
+
+        if (properties.getProperty("workers") != null)
+            workers = properties.getProperty("workers");
+
+        if (properties.getProperty("worker_batch") != null)
+            worker_batch = Integer.parseInt(properties.getProperty("worker_batch"));
+
+        if (properties.getProperty("worker_heartbeat") != null)
+            worker_heartbeat = Integer.parseInt(properties.getProperty("worker_heartbeat"));
+
+        if (properties.getProperty("worker_port") != null)
+            worker_port = Integer.parseInt(properties.getProperty("worker_port"));
+
+        if (properties.getProperty("worker_suls") != null)
+            worker_suls = Integer.parseInt(properties.getProperty("worker_suls"));
+
+        if (properties.getProperty("differential_config") != null)
+            differential_config = properties.getProperty("differential_config");
+
+        if (properties.getProperty("differential_tests") != null && (properties.getProperty("differential_tests").equalsIgnoreCase("wmethod") || properties.getProperty("differential_tests").equalsIgnoreCase("randomwalk")))
+            differential_tests = properties.getProperty("differential_tests").toLowerCase();
+
+        if (properties.getProperty("differential_model") != null)
+            differential_model = properties.getProperty("differential_model");
+
+        if (properties.getProperty("conform_model") != null)
+            conform_model = properties.getProperty("conform_model");
+
+        if (properties.getProperty("conform_suls") != null)
+            conform_suls = Integer.parseInt(properties.getProperty("conform_suls"));
+
+        if (properties.getProperty("fuzz_model") != null)
+            fuzz_model = properties.getProperty("fuzz_model");
+
+        if (properties.getProperty("fuzz_states") != null)
+            fuzz_states = properties.getProperty("fuzz_states");
+
+        if (properties.getProperty("fuzz_suls") != null)
+            fuzz_suls = Integer.parseInt(properties.getProperty("fuzz_suls"));
+
+        if (properties.getProperty("fuzz_sessions") != null)
+            fuzz_sessions = Long.parseLong(properties.getProperty("fuzz_sessions"));
+
+        if (properties.getProperty("fuzz_hang_time") != null)
+            fuzz_hang_time = Long.parseLong(properties.getProperty("fuzz_hang_time"));
+
+        if (properties.getProperty("fuzz_replay") != null)
+            fuzz_replay = Long.parseLong(properties.getProperty("fuzz_replay"));
+
+        if (properties.getProperty("nondeterminism_repeats") != null)
+            nondeterminism_repeats = Integer.parseInt(properties.getProperty("nondeterminism_repeats"));
+
+        if (properties.getProperty("nondeterminism_suspicious_output") != null)
+            nondeterminism_suspicious_output = properties.getProperty("nondeterminism_suspicious_output");
+
+        if (properties.getProperty("warm_start_model") != null)
+            warm_start_model = properties.getProperty("warm_start_model");
+
+        if (properties.getProperty("warm_start_trust") != null)
+            warm_start_trust = Boolean.parseBoolean(properties.getProperty("warm_start_trust"));
+
+        if (properties.getProperty("cache_file") != null)
+            cache_file = properties.getProperty("cache_file");
+
+        if (properties.getProperty("eqtest_early_abort") != null)
+            eqtest_early_abort = Boolean.parseBoolean(properties.getProperty("eqtest_early_abort"));
+
         if (properties.getProperty("max_depth") != null)
             max_depth = Integer.parseInt(properties.getProperty("max_depth"));
 
+        if (properties.getProperty("eqtest_order") != null)
+            eqtest_order = properties.getProperty("eqtest_order").toLowerCase();
+
+        if (properties.getProperty("eqtest_sample") != null)
+            eqtest_sample = Double.parseDouble(properties.getProperty("eqtest_sample"));
+
         if (properties.getProperty("min_length") != null)
             min_length = Integer.parseInt(properties.getProperty("min_length"));
 
@@ -104,6 +341,12 @@ public TLSConfig(String filename) throws IOException {
 
         if (properties.getProperty("seed") != null)
             seed = Integer.parseInt(properties.getProperty("seed"));
+
+        if (properties.getProperty("restart_probability") != null)
+            restart_probability = Double.parseDouble(properties.getProperty("restart_probability"));
+
+        if (properties.getProperty("max_steps") != null)
+            max_steps = Long.parseLong(properties.getProperty("max_steps"));
     }
 
 }
@@ -10,12 +10,20 @@ class TLSSUL implements SUL<String, String> {
     public TLSTestService tls;
 
     public TLSSUL(TLSConfig config) throws Exception {
+        this(config, config.port);
+    }
+
+    /**
+     * Use a different port, for additional instances of the target. The placeholder {port} in the command is replaced
+     * by the port.
+     */
+    public TLSSUL(TLSConfig config, int port) throws Exception {
         tls = new TLSTestService();
 
         tls.setTarget(config.target);
         tls.setHost(config.host);
-        tls.setPort(config.port);
-        tls.setCommand(config.cmd);
+        tls.setPort(port);
+        tls.setCommand(config.cmd != null ? config.cmd.replace("{port}", Integer.toString(port)) : null);
         tls.setRequireRestart(config.restart);
         tls.setReceiveMessagesTimeout(config.timeout);
 
@@ -32,8 +40,8 @@ public void reset() {
         try {
             tls.reset();
         } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(0);
+            // Fail the query, so the caller can record the failure and stop the target
+            throw new RuntimeException("Reset of the target failed", e);
         }
     }
 
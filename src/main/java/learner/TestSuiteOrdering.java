@@ -0,0 +1,250 @@
+package learner;
+
+import net.automatalib.automata.UniversalDeterministicAutomaton;
+import net.automatalib.util.automata.Automata;
+import net.automatalib.words.Word;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Orders and samples the test prefixes (state or transition cover) of the modified W/Wp-method oracles.
+ * <p>
+ * Counterexamples for TLS state machines usually involve recently split states or transitions with an unusual
+ * output, so testing those first finds counterexamples sooner. Prefixes can also be sampled per source state with a
+ * fixed seed to trade completeness of the test suite for time.
+ */
+public class TestSuiteOrdering<I> {
+
+    private static final Logger log = LoggerFactory.getLogger(TestSuiteOrdering.class);
+
+    public enum Heuristic {
+        // Test prefixes leading from or to states that were not present in the previous hypothesis first
+        NEWSTATES,
+        // Test transitions whose output differs from the output of most other states for the same input first
+        DIVERGENT,
+        // Test prefixes that take the least time on the target first, according to the cost model
+        CHEAP
+    }
+
+    private final List<Heuristic> heuristics;
+    private final double sampleRatio;
+    private final long seed;
+    private CostModel<I> costModel = null;
+    private int shard = 0;
+    private int shards = 1;
+
+    // Access sequences of the previous and current hypothesis
+    private Set<Word<I>> knownAccessSequences = new HashSet<>();
+    private Set<Word<I>> currentAccessSequences = new HashSet<>();
+
+    private int selected = 0;
+    private int total = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param heuristics  heuristics to sort by, in order of importance
+     * @param sampleRatio fraction of the prefixes per state that is kept (1.0 keeps all prefixes)
+     * @param seed        seed used for sampling
+     */
+    public TestSuiteOrdering(List<Heuristic> heuristics, double sampleRatio, long seed) {
+        this.heuristics = new ArrayList<>(heuristics);
+        this.sampleRatio = sampleRatio;
+        this.seed = seed;
+    }
+
+    public static List<Heuristic> parseHeuristics(String value) throws Exception {
+        List<Heuristic> result = new ArrayList<>();
+        for (String name : value.trim().split(" ")) {
+            if (name.isEmpty() || name.equalsIgnoreCase("default"))
+                continue;
+
+            boolean found = false;
+            for (Heuristic h : Heuristic.values()) {
+                if (h.name().equalsIgnoreCase(name)) {
+                    result.add(h);
+                    found = true;
+                }
+            }
+
+            if (!found)
+                throw new Exception("Unknown test suite ordering: " + name);
+        }
+        return result;
+    }
+
+    /**
+     * @param costModel the measured cost of the target, used by {@link Heuristic#CHEAP}
+     */
+    public void setCostModel(CostModel<I> costModel) {
+        this.costModel = costModel;
+    }
+
+    /**
+     * Only select every shards-th prefix, starting at the given shard, so several runners can test disjoint parts of
+     * the test suite. The prefixes are assigned after ordering, so every shard starts with the most promising ones.
+     */
+    public void setShard(int shard, int shards) {
+        this.shard = shard;
+        this.shards = shards;
+    }
+
+    /**
+     * @return the cost model if the test words should be ordered by cost, null otherwise
+     */
+    public CostModel<I> getCostModel() {
+        return heuristics.contains(Heuristic.CHEAP) ? costModel : null;
+    }
+
+    public boolean isDefault() {
+        return heuristics.isEmpty() && sampleRatio >= 1.0 && shards == 1;
+    }
+
+    /**
+     * Order and sample the given test prefixes for a hypothesis. The access sequences of the hypothesis are
+     * remembered to detect new states in the next round, so this can be called several times for the same hypothesis.
+     *
+     * @return the selected prefixes, most promising first
+     */
+    public List<Word<I>> order(UniversalDeterministicAutomaton<?, I, ?, ?, ?> hypothesis, Collection<? extends I> inputs, List<Word<I>> prefixes) {
+        return doOrder(hypothesis, inputs, prefixes);
+    }
+
+    /*
+     * Delegate target, used to bind the state-parameter of the automaton
+     */
+    private <S> List<Word<I>> doOrder(UniversalDeterministicAutomaton<S, I, ?, ?, ?> hypothesis, Collection<? extends I> inputs, List<Word<I>> prefixes) {
+        Map<S, Word<I>> accessSequences = new HashMap<>();
+        for (Word<I> as : Automata.stateCover(hypothesis, inputs)) {
+            accessSequences.put(hypothesis.getState(as), as);
+        }
+
+        // The learner may refine the same hypothesis object, so detect a new round by its access sequences
+        Set<Word<I>> hypAccessSequences = new HashSet<>(accessSequences.values());
+        if (!hypAccessSequences.equals(currentAccessSequences)) {
+            knownAccessSequences = currentAccessSequences;
+            currentAccessSequences = hypAccessSequences;
+        }
+
+        // Group prefixes per source state, used for stratified sampling
+        Map<S, List<Word<I>>> strata = new LinkedHashMap<>();
+        for (Word<I> prefix : prefixes) {
+            S source = hypothesis.getState(prefix.isEmpty() ? prefix : prefix.prefix(prefix.length() - 1));
+            List<Word<I>> stratum = strata.get(source);
+            if (stratum == null) {
+                stratum = new ArrayList<>();
+                strata.put(source, stratum);
+            }
+            stratum.add(prefix);
+        }
+
+        List<Word<I>> result = new ArrayList<>(prefixes.size());
+        Random random = new Random(seed);
+        for (List<Word<I>> stratum : strata.values()) {
+            if (sampleRatio < 1.0) {
+                int keep = Math.max(1, (int) Math.ceil(stratum.size() * sampleRatio));
+                Collections.shuffle(stratum, random);
+                result.addAll(stratum.subList(0, keep));
+            } else {
+                result.addAll(stratum);
+            }
+        }
+
+        // Sort the remaining prefixes on the selected heuristics (stable, so the cover order is kept otherwise)
+        final Map<Word<I>, int[]> keys = new HashMap<>();
+        for (Word<I> prefix : result) {
+            int[] key = new int[heuristics.size()];
+            for (int i = 0; i < heuristics.size(); i++) {
+                switch (heuristics.get(i)) {
+                    case NEWSTATES:
+                        key[i] = -newStates(hypothesis, accessSequences, prefix);
+                        break;
+                    case DIVERGENT:
+                        key[i] = -divergence(hypothesis, prefix);
+                        break;
+                    case CHEAP:
+                        // Microseconds are precise enough to compare prefixes
+                        key[i] = costModel == null ? 0 : (int) Math.min(Integer.MAX_VALUE, costModel.estimate(prefix) / 1000);
+                        break;
+                }
+            }
+            keys.put(prefix, key);
+        }
+
+        Collections.sort(result, new Comparator<Word<I>>() {
+            @Override
+            public int compare(Word<I> w1, Word<I> w2) {
+                int[] k1 = keys.get(w1);
+                int[] k2 = keys.get(w2);
+                for (int i = 0; i < k1.length; i++) {
+                    if (k1[i] != k2[i])
+                        return Integer.compare(k1[i], k2[i]);
+                }
+                return 0;
+            }
+        });
+
+        if (shards > 1) {
+            List<Word<I>> shardResult = new ArrayList<>(result.size() / shards + 1);
+            for (int i = shard; i < result.size(); i += shards) {
+                shardResult.add(result.get(i));
+            }
+            result = shardResult;
+        }
+
+        selected = result.size();
+        total = prefixes.size();
+        log.info("Test suite ordering " + heuristics + ": selected " + selected + " of " + total + " prefixes (" + String.format("%.1f", 100.0 * selected / Math.max(1, total)) + "%)");
+
+        return result;
+    }
+
+    /*
+     * Number of states visited at the end of the prefix (source and target) that were not in the previous hypothesis
+     */
+    private <S> int newStates(UniversalDeterministicAutomaton<S, I, ?, ?, ?> hypothesis, Map<S, Word<I>> accessSequences, Word<I> prefix) {
+        int count = 0;
+        if (!knownAccessSequences.contains(accessSequences.get(hypothesis.getState(prefix))))
+            count++;
+        if (!prefix.isEmpty() && !knownAccessSequences.contains(accessSequences.get(hypothesis.getState(prefix.prefix(prefix.length() - 1)))))
+            count++;
+        return count;
+    }
+
+    /*
+     * Number of other states producing a different output for the last input of the prefix
+     */
+    private <S, T> int divergence(UniversalDeterministicAutomaton<S, I, T, ?, ?> hypothesis, Word<I> prefix) {
+        if (prefix.isEmpty())
+            return 0;
+
+        I input = prefix.lastSymbol();
+        S source = hypothesis.getState(prefix.prefix(prefix.length() - 1));
+        Object output = hypothesis.getTransitionProperty(hypothesis.getTransition(source, input));
+
+        int count = 0;
+        for (S state : hypothesis.getStates()) {
+            if (state.equals(source))
+                continue;
+            if (!Objects.equals(output, hypothesis.getTransitionProperty(hypothesis.getTransition(state, input))))
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of prefixes selected in the last round
+     */
+    public int getSelected() {
+        return selected;
+    }
+
+    /**
+     * @return the number of prefixes available in the last round
+     */
+    public int getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,295 @@
+package learner;
+
+import de.learnlib.api.MembershipOracle;
+import de.learnlib.oracles.DefaultQuery;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+import java.util.*;
+
+/**
+ * Executes the prefix * middle * suffix test words of the modified W/Wp-method oracles.
+ * <p>
+ * Middle parts are enumerated depth-first, so the hypothesis state and output reached after prefix * middle are
+ * carried along and only the suffix has to be evaluated on the hypothesis for every test word.
+ * <p>
+ * Only maximal test words are executed on the target: the verdict for prefix and prefix * middle follows from the
+ * output of any longer test word starting with it. The only exception are words after which the hypothesis predicts
+ * that the connection is closed. These are executed on their own and the middle parts extending them are skipped, as
+ * nothing can happen anymore after the connection is closed.
+ * <p>
+ * The test words are executed while they are generated, so the memory used does not grow with the size of the test
+ * suite. Whether a longer test word starts with a test word is decided from the hypothesis and the suffixes.
+ */
+public class TestSuiteRunner<I, O> {
+
+    // Number of test words executed cheapest first with a cost model
+    private static final int CHUNK_SIZE = 1000;
+
+    private final MembershipOracle<I, Word<O>> sulOracle;
+    private CostModel<I> costModel = null;
+
+    private int testWords = 0;
+    private int coveredWords = 0;
+
+    public TestSuiteRunner(MembershipOracle<I, Word<O>> sulOracle) {
+        this.sulOracle = sulOracle;
+    }
+
+    /**
+     * @param costModel if set, the test words of a prefix are executed cheapest first, in chunks of 1000 words
+     */
+    public void setCostModel(CostModel<I> costModel) {
+        this.costModel = costModel;
+    }
+
+    /**
+     * Check whether an output word ends in a state in which the target closed the connection.
+     */
+    public static boolean isConnectionClosed(Word<?> output) {
+        return !output.isEmpty() && isConnectionClosed(output.lastSymbol());
+    }
+
+    /**
+     * Check whether an output symbol indicates that the target closed the connection.
+     */
+    public static boolean isConnectionClosed(Object output) {
+        String symbol = String.valueOf(output);
+        return symbol.endsWith("ConnectionClosed") || symbol.endsWith("ConnectionClosedEOF") || symbol.endsWith("ConnectionClosedException");
+    }
+
+    /**
+     * Test the prefix, and prefix * middle * suffix for all middle parts up to the maximum depth. Suffixes and longer
+     * middle parts are skipped for words after which the connection is closed.
+     *
+     * @return a counterexample, or null if all tests passed
+     */
+    public DefaultQuery<I, Word<O>> test(CompactHypothesis<I, O> hypothesis, Word<I> prefix, Collection<? extends I> inputs, int maxDepth, List<Word<I>> suffixes) {
+        return testWithStateSuffixes(hypothesis, prefix, inputs, maxDepth, Collections.nCopies(hypothesis.size(), suffixes));
+    }
+
+    /**
+     * Same as {@link #test(CompactHypothesis, Word, Collection, int, List)}, but the suffixes depend on the hypothesis
+     * state reached after prefix * middle.
+     *
+     * @param stateSuffixes suffixes for every state of the hypothesis, indexed by state
+     */
+    public DefaultQuery<I, Word<O>> testWithStateSuffixes(CompactHypothesis<I, O> hypothesis, Word<I> prefix, Collection<? extends I> inputs, int maxDepth, List<? extends List<Word<I>>> stateSuffixes) {
+        Suite suite = new Suite(hypothesis, prefix.length(), inputs, maxDepth, stateSuffixes);
+
+        WordBuilder<I> wb = new WordBuilder<>(prefix);
+        WordBuilder<O> hypOutput = new WordBuilder<>();
+        int state = hypothesis.appendOutputs(hypothesis.getInitialState(), prefix, hypOutput);
+
+        coveredWords++;
+        DefaultQuery<I, Word<O>> ce;
+        if (maxDepth == 0 || isConnectionClosed(hypOutput.toWord()))
+            ce = suite.test(wb.toWord(), hypOutput.toWord());
+        else
+            ce = suite.testMiddles(wb, hypOutput, new int[maxDepth + 1], state, maxDepth);
+        return ce != null ? ce : suite.flush();
+    }
+
+    /*
+     * Test suite of a single prefix, generated depth-first. A test word is executed as soon as it is generated, unless
+     * another test word of the suite starts with it (or is the same word and is generated later), which is decided
+     * from the hypothesis without storing the suite. With a cost model, the test words are collected in chunks that
+     * are executed cheapest first.
+     */
+    private class Suite {
+        final CompactHypothesis<I, O> hypothesis;
+        final int prefixLength;
+        final Collection<? extends I> inputs;
+        final int maxDepth;
+        final List<? extends List<Word<I>>> stateSuffixes;
+        final List<DefaultQuery<I, Word<O>>> chunk = new ArrayList<>();
+
+        Suite(CompactHypothesis<I, O> hypothesis, int prefixLength, Collection<? extends I> inputs, int maxDepth, List<? extends List<Word<I>>> stateSuffixes) {
+            this.hypothesis = hypothesis;
+            this.prefixLength = prefixLength;
+            this.inputs = inputs;
+            this.maxDepth = maxDepth;
+            this.stateSuffixes = stateSuffixes;
+        }
+
+        /*
+         * Test the middle parts extending the current word, states[d] is the hypothesis state after d inputs of the
+         * middle part
+         */
+        DefaultQuery<I, Word<O>> testMiddles(WordBuilder<I> wb, WordBuilder<O> hypOutput, int[] states, int state, int depth) {
+            int length = wb.size();
+            int middle = length - prefixLength;
+            states[middle] = state;
+            for (I input : inputs) {
+                int i = hypothesis.getInputIndex(input);
+                O output = hypothesis.getOutput(state, i);
+                int succ = hypothesis.getSuccessor(state, i);
+                wb.append(input);
+                hypOutput.append(output);
+                states[middle + 1] = succ;
+                coveredWords++;
+
+                DefaultQuery<I, Word<O>> ce = null;
+                if (isConnectionClosed(output)) {
+                    // Only check that the connection is closed, skip suffixes and longer middle parts
+                    if (!extendedByAncestor(wb, states, middle + 1, Word.<I>epsilon()))
+                        ce = test(wb.toWord(), hypOutput.toWord());
+                } else {
+                    List<Word<I>> suffixes = stateSuffixes.get(succ);
+                    for (Word<I> suffix : suffixes) {
+                        coveredWords++;
+                        if (extendedBySuffix(suffix, suffixes) || (depth > 1 && covers(succ, depth - 1, suffix)) || extendedByAncestor(wb, states, middle + 1, suffix))
+                            continue;
+                        wb.append(suffix);
+                        hypothesis.appendOutputs(succ, suffix, hypOutput);
+                        ce = test(wb.toWord(), hypOutput.toWord());
+                        wb.truncate(length + 1);
+                        hypOutput.truncate(length + 1);
+                        if (ce != null)
+                            break;
+                    }
+
+                    if (ce == null && depth > 1)
+                        ce = testMiddles(wb, hypOutput, states, succ, depth - 1);
+                }
+
+                wb.truncate(length);
+                hypOutput.truncate(length);
+                if (ce != null)
+                    return ce;
+            }
+            return null;
+        }
+
+        /*
+         * Another suffix of the same state starts with the suffix
+         */
+        boolean extendedBySuffix(Word<I> suffix, List<Word<I>> suffixes) {
+            for (Word<I> other : suffixes) {
+                if (other.length() > suffix.length() && other.prefix(suffix.length()).equals(suffix))
+                    return true;
+            }
+            return false;
+        }
+
+        /*
+         * A test word below a middle part in the given state, with the given remaining depth, starts with rest. These
+         * words are generated later, so a word equal to the current one counts as well.
+         */
+        boolean covers(int state, int depth, Word<I> rest) {
+            if (rest.isEmpty())
+                return true;
+            I input = rest.firstSymbol();
+            if (!hypothesis.getInputs().contains(input))
+                return false;
+            int i = hypothesis.getInputIndex(input);
+            if (isConnectionClosed(hypothesis.getOutput(state, i)))
+                return rest.length() == 1;
+
+            Word<I> tail = rest.subWord(1);
+            int succ = hypothesis.getSuccessor(state, i);
+            for (Word<I> suffix : stateSuffixes.get(succ)) {
+                if (suffix.length() >= tail.length() && suffix.prefix(tail.length()).equals(tail))
+                    return true;
+            }
+            return depth > 1 && covers(succ, depth - 1, tail);
+        }
+
+        /*
+         * A suffix of a shorter middle part of the current word (generated earlier) makes a longer test word that
+         * starts with the current middle part and suffix
+         */
+        boolean extendedByAncestor(WordBuilder<I> wb, int[] states, int middle, Word<I> suffix) {
+            Word<I> word = wb.toWord().concat(suffix);
+            for (int d = 1; d < middle; d++) {
+                Word<I> rest = word.subWord(prefixLength + d);
+                for (Word<I> ancestorSuffix : stateSuffixes.get(states[d])) {
+                    if (ancestorSuffix.length() > rest.length() && ancestorSuffix.prefix(rest.length()).equals(rest))
+                        return true;
+                }
+            }
+            return false;
+        }
+
+        DefaultQuery<I, Word<O>> test(Word<I> word, Word<O> expected) {
+            DefaultQuery<I, Word<O>> test = new DefaultQuery<>(word);
+            test.answer(expected);
+            if (costModel == null)
+                return execute(test);
+
+            chunk.add(test);
+            return chunk.size() >= CHUNK_SIZE ? flush() : null;
+        }
+
+        DefaultQuery<I, Word<O>> flush() {
+            List<DefaultQuery<I, Word<O>>> tests = new ArrayList<>(chunk);
+            chunk.clear();
+            final Map<Word<I>, Double> costs = new HashMap<>();
+            for (DefaultQuery<I, Word<O>> test : tests) {
+                costs.put(test.getInput(), costModel.estimate(test.getInput()));
+            }
+            Collections.sort(tests, new Comparator<DefaultQuery<I, Word<O>>>() {
+                @Override
+                public int compare(DefaultQuery<I, Word<O>> t1, DefaultQuery<I, Word<O>> t2) {
+                    return Double.compare(costs.get(t1.getInput()), costs.get(t2.getInput()));
+                }
+            });
+
+            for (DefaultQuery<I, Word<O>> test : tests) {
+                DefaultQuery<I, Word<O>> ce = execute(test);
+                if (ce != null)
+                    return ce;
+            }
+            return null;
+        }
+    }
+
+    /*
+     * Execute the test word, whose output is the expected output of the hypothesis
+     */
+    private DefaultQuery<I, Word<O>> execute(DefaultQuery<I, Word<O>> test) {
+        DefaultQuery<I, Word<O>> query = new DefaultQuery<>(test.getInput());
+        sulOracle.processQueries(Collections.singleton(query));
+        testWords++;
+
+        if (!Objects.equals(test.getOutput(), query.getOutput()))
+            return shortestCounterExample(query, test.getOutput());
+        return null;
+    }
+
+    /*
+     * Outputs are prefix-closed, so the query up to the first differing output is a counterexample as well
+     */
+    private DefaultQuery<I, Word<O>> shortestCounterExample(DefaultQuery<I, Word<O>> query, Word<O> hypOutput) {
+        Word<O> output = query.getOutput();
+        int length = Math.min(output.length(), hypOutput.length());
+        for (int i = 0; i < length; i++) {
+            if (!Objects.equals(output.getSymbol(i), hypOutput.getSymbol(i))) {
+                DefaultQuery<I, Word<O>> ce = new DefaultQuery<>(query.getInput().prefix(i + 1));
+                ce.answer(output.prefix(i + 1));
+                return ce;
+            }
+        }
+        return query;
+    }
+
+    /**
+     * @return the number of test words executed on the target since the last reset
+     */
+    public int getTestWords() {
+        return testWords;
+    }
+
+    /**
+     * @return the number of test words of the test suite checked since the last reset, including those checked as
+     * part of a longer word
+     */
+    public int getCoveredWords() {
+        return coveredWords;
+    }
+
+    public void resetStatistics() {
+        testWords = 0;
+        coveredWords = 0;
+    }
+}
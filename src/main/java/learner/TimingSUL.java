@@ -0,0 +1,32 @@
+package learner;
+
+import de.learnlib.api.SUL;
+
+/**
+ * SUL that records the time of every reset and step in a {@link CostModel}.
+ */
+public class TimingSUL<I, O> implements SUL<I, O> {
+
+    private final SUL<I, O> sul;
+    private final CostModel<I> costModel;
+
+    public TimingSUL(SUL<I, O> sul, CostModel<I> costModel) {
+        this.sul = sul;
+        this.costModel = costModel;
+    }
+
+    @Override
+    public void reset() {
+        long start = System.nanoTime();
+        sul.reset();
+        costModel.recordReset(System.nanoTime() - start);
+    }
+
+    @Override
+    public O step(I input) {
+        long start = System.nanoTime();
+        O output = sul.step(input);
+        costModel.recordStep(input, System.nanoTime() - start);
+        return output;
+    }
+}
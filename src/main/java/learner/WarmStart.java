@@ -0,0 +1,154 @@
+package learner;
+
+import de.learnlib.api.LearningAlgorithm;
+import de.learnlib.api.MembershipOracle;
+import de.learnlib.oracles.DefaultQuery;
+import net.automatalib.automata.transout.MealyMachine;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.util.automata.Automata;
+import net.automatalib.words.Word;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Start learning from a model learned earlier, for instance of an older version of the target.
+ * <p>
+ * The access sequences and characterizing set of the previous model are queried in one batch before learning starts,
+ * so the learner finds these answers in the cache. The characterizing set can also be used as initial suffixes. After
+ * the first hypothesis is constructed, every answered query the hypothesis disagrees with is used as a counterexample,
+ * so the parts of the target that did not change are learned without equivalence queries. Only symbols in both the
+ * previous model and the current alphabet are used.
+ */
+public class WarmStart<I, O> {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmStart.class);
+
+    private final CompactMealy<I, O> model;
+
+    public WarmStart(CompactMealy<I, O> model) {
+        this.model = model;
+    }
+
+    /**
+     * Read a model written by GraphDOT or a binary model, see {@link ModelFile#read(String)}.
+     */
+    public static WarmStart<String, String> read(String filename) throws Exception {
+        CompactMealy<String, String> model = ModelFile.read(filename);
+        log.info("Read previous model from " + filename + ": " + model.size() + " states, inputs " + model.getInputAlphabet());
+        return new WarmStart<>(model);
+    }
+
+    /*
+     * Inputs of the current alphabet that also occur in the previous model
+     */
+    private List<I> commonInputs(Collection<? extends I> inputs) {
+        List<I> common = new ArrayList<>();
+        for (I input : inputs) {
+            if (model.getInputAlphabet().contains(input))
+                common.add(input);
+        }
+        return common;
+    }
+
+    /**
+     * @return the inputs of the given alphabet that do not occur in the previous model
+     */
+    public List<I> getNewInputs(Collection<? extends I> inputs) {
+        List<I> result = new ArrayList<>();
+        for (I input : inputs) {
+            if (!model.getInputAlphabet().contains(input))
+                result.add(input);
+        }
+        return result;
+    }
+
+    /**
+     * @return an oracle that answers queries over the inputs of the previous model from that model, and passes on the
+     * other queries to the delegate
+     */
+    public PreviousModelOracle<I, O> createOracle(MembershipOracle<I, Word<O>> delegate) {
+        return new PreviousModelOracle<>(model, delegate);
+    }
+
+    /**
+     * @return the characterizing set of the previous model over the inputs it shares with the given alphabet
+     */
+    public List<Word<I>> getSuffixes(Collection<? extends I> inputs) {
+        return Automata.characterizingSet(model, commonInputs(inputs));
+    }
+
+    /**
+     * Query the access sequences of the previous model, and their one-symbol extensions, followed by every word of its
+     * characterizing set in a single batch, and compare the answers with the previous model.
+     *
+     * @return the answered queries, shortest first
+     */
+    public List<DefaultQuery<I, Word<O>>> verify(MembershipOracle<I, Word<O>> oracle, Collection<? extends I> inputs) {
+        List<I> common = commonInputs(inputs);
+        List<Word<I>> suffixes = Automata.characterizingSet(model, common);
+        for (I input : common) {
+            if (!suffixes.contains(Word.fromLetter(input)))
+                suffixes.add(Word.fromLetter(input));
+        }
+
+        List<Word<I>> prefixes = new ArrayList<>();
+        Automata.cover(model, common, prefixes, prefixes);
+
+        List<DefaultQuery<I, Word<O>>> queries = new ArrayList<>(prefixes.size() * suffixes.size());
+        for (Word<I> prefix : prefixes) {
+            for (Word<I> suffix : suffixes) {
+                queries.add(new DefaultQuery<I, Word<O>>(prefix.concat(suffix)));
+            }
+        }
+        oracle.processQueries(queries);
+
+        int agreed = 0;
+        for (DefaultQuery<I, Word<O>> query : queries) {
+            if (model.computeOutput(query.getInput()).equals(query.getOutput()))
+                agreed++;
+        }
+        log.info("Previous model agrees with the target on " + agreed + " of " + queries.size() + " queries");
+
+        Collections.sort(queries, new Comparator<DefaultQuery<I, Word<O>>>() {
+            @Override
+            public int compare(DefaultQuery<I, Word<O>> q1, DefaultQuery<I, Word<O>> q2) {
+                return Integer.compare(q1.getInput().length(), q2.getInput().length());
+            }
+        });
+        return queries;
+    }
+
+    /**
+     * Refine the hypothesis with the answered queries it does not agree with, until it is consistent with all of them.
+     * Where the target still behaves like the previous model, the hypothesis grows to the states of the previous model.
+     *
+     * @param queries the queries answered by {@link #verify(MembershipOracle, Collection)}
+     * @return the number of refinements
+     */
+    public int refine(LearningAlgorithm<? extends MealyMachine<?, I, ?, O>, I, Word<O>> learner, List<DefaultQuery<I, Word<O>>> queries) {
+        int refinements = 0;
+        MealyMachine<?, I, ?, O> hyp = learner.getHypothesisModel();
+
+        boolean refined = true;
+        while (refined) {
+            refined = false;
+            for (DefaultQuery<I, Word<O>> query : queries) {
+                if (hyp.computeOutput(query.getInput()).equals(query.getOutput()))
+                    continue;
+
+                log.info("Refining with query from previous model: {} / {}", query.getInput(), query.getOutput());
+                if (learner.refineHypothesis(query)) {
+                    refinements++;
+                    refined = true;
+                    hyp = learner.getHypothesisModel();
+                    break;
+                }
+            }
+        }
+
+        log.info("Hypothesis consistent with previous model queries after " + refinements + " refinements, " + hyp.size() + " states");
+        return refinements;
+    }
+}
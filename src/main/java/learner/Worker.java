@@ -0,0 +1,210 @@
+package learner;
+
+import de.learnlib.api.SUL;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Daemon owning one or more SUL instances, executing batches of queries sent by a {@link WorkerCoordinatorOracle}
+ * using the {@link WorkerProtocol}. The words of a batch are executed in parallel on the SUL instances.
+ * <p>
+ * Started with mode=worker in the configuration. The worker listens on worker_port and starts worker_suls instances
+ * of the target on the ports following port, in the same way as the speculative SULs.
+ */
+public class Worker {
+
+    private static final Logger log = LoggerFactory.getLogger(Worker.class);
+
+    private final SULPool<String, String> pool;
+    private final int port;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService heartbeats;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong words = new AtomicLong();
+
+    public Worker(SULPool<String, String> pool, int port) {
+        this.pool = pool;
+        this.port = port;
+        this.executor = Executors.newFixedThreadPool(pool.size(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "worker-sul-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "worker-heartbeat-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static Worker create(TLSConfig config) throws Exception {
+        List<SUL<String, String>> suls = new ArrayList<>();
+        for (int i = 0; i < config.worker_suls; i++) {
+            suls.add(new TLSSUL(config, config.port + i));
+        }
+        return new Worker(new SULPool<>(suls), config.worker_port);
+    }
+
+    /**
+     * Accept connections until the process is stopped. Every connection is handled by its own thread.
+     */
+    public void run() throws IOException {
+        try (ServerSocket server = new ServerSocket(port)) {
+            log.info("Worker listening on port " + server.getLocalPort() + " with " + pool.size() + " SULs");
+            while (true) {
+                final Socket socket = server.accept();
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(socket);
+                    }
+                }, "worker-connection-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        log.info("Connection from " + socket.getRemoteSocketAddress());
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            while (true) {
+                WorkerProtocol.Message message = WorkerProtocol.read(in);
+                if (message.type == WorkerProtocol.HEARTBEAT) {
+                    WorkerProtocol.writeHeartbeat(out);
+                } else if (message.type == WorkerProtocol.QUERIES) {
+                    execute(message, out);
+                } else {
+                    throw new IOException("Unexpected message type: " + message.type);
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            log.info("Connection from " + socket.getRemoteSocketAddress() + " closed");
+        } catch (IOException e) {
+            log.error("Connection from " + socket.getRemoteSocketAddress() + " failed", e);
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /*
+     * Execute the words of the batch in parallel and send the outputs. Heartbeats are sent every interval until the
+     * outputs are sent, however long the single words take.
+     */
+    private void execute(WorkerProtocol.Message batch, DataOutputStream out) throws IOException {
+        List<Future<Word<String>>> futures = new ArrayList<>(batch.words.size());
+        for (final Word<String> word : batch.words) {
+            futures.add(executor.submit(new Callable<Word<String>>() {
+                @Override
+                public Word<String> call() throws Exception {
+                    return execute(word);
+                }
+            }));
+        }
+
+        AtomicBoolean stopped = new AtomicBoolean();
+        ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(heartbeat(out, stopped), batch.heartbeat, batch.heartbeat, TimeUnit.MILLISECONDS);
+        try {
+            List<Word<String>> outputs = new ArrayList<>(futures.size());
+            try {
+                for (Future<Word<String>> future : futures) {
+                    outputs.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while executing batch " + batch.id);
+            } catch (ExecutionException e) {
+                log.error("Batch " + batch.id + " failed", e.getCause());
+                for (Future<Word<String>> future : futures) {
+                    future.cancel(false);
+                }
+                stop(heartbeat, out, stopped);
+                WorkerProtocol.writeError(out, batch.id, e.getCause().toString());
+                return;
+            }
+
+            stop(heartbeat, out, stopped);
+            WorkerProtocol.writeAnswers(out, batch.id, outputs);
+            log.info("Batch " + batch.id + ": " + outputs.size() + " words executed (" + batches.incrementAndGet() + " batches, " + words.addAndGet(outputs.size()) + " words in total)");
+        } finally {
+            stop(heartbeat, out, stopped);
+        }
+    }
+
+    /*
+     * Heartbeat of a busy connection, only sent until the outputs of the batch are sent
+     */
+    private Runnable heartbeat(final DataOutputStream out, final AtomicBoolean stopped) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                synchronized (out) {
+                    if (stopped.get())
+                        return;
+                    try {
+                        WorkerProtocol.writeHeartbeat(out);
+                    } catch (IOException e) {
+                        // The connection failed, which the connection thread notices when it sends the outputs
+                        stopped.set(true);
+                    }
+                }
+            }
+        };
+    }
+
+    /*
+     * Stop the heartbeats of a batch, a heartbeat being written is finished first
+     */
+    private void stop(ScheduledFuture<?> heartbeat, DataOutputStream out, AtomicBoolean stopped) {
+        heartbeat.cancel(false);
+        synchronized (out) {
+            stopped.set(true);
+        }
+    }
+
+    private Word<String> execute(Word<String> word) throws InterruptedException {
+        SUL<String, String> sul = pool.acquire();
+        try {
+            sul.reset();
+            WordBuilder<String> output = new WordBuilder<>(word.length());
+            for (String input : word) {
+                output.append(sul.step(input));
+            }
+            return output.toWord();
+        } finally {
+            pool.release(sul);
+        }
+    }
+}
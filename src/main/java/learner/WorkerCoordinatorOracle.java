@@ -0,0 +1,332 @@
+package learner;
+
+import de.learnlib.api.MembershipOracle;
+import de.learnlib.api.Query;
+import net.automatalib.words.Word;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Membership oracle executing queries on remote {@link Worker} daemons.
+ * <p>
+ * Every batch of queries is split into batches of at most the batch size, which are taken from a shared queue by one
+ * thread per worker. An idle connection is checked with a heartbeat every interval, and a busy worker sends heartbeats
+ * itself. If a worker does not respond within three intervals, or the connection fails, its batch is put back at the
+ * front of the queue for the other workers and the connection is retried every interval. A batch that fails on
+ * several workers fails the query.
+ */
+public class WorkerCoordinatorOracle implements MembershipOracle<String, Word<String>> {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkerCoordinatorOracle.class);
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static class Batch {
+        final int id;
+        final List<Word<String>> words;
+        final CountDownLatch done;
+        int attempts = 0;
+        List<Word<String>> outputs = null;
+        String error = null;
+
+        Batch(int id, List<Word<String>> words, CountDownLatch done) {
+            this.id = id;
+            this.words = words;
+            this.done = done;
+        }
+    }
+
+    private final int batchSize;
+    private final int heartbeat;
+    private final Budget budget;
+    private final BlockingDeque<Batch> queue = new LinkedBlockingDeque<>();
+    private final List<Connection> connections = new ArrayList<>();
+    private final AtomicInteger batchIds = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    private final AtomicLong requeued = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param workers   addresses of the workers
+     * @param batchSize maximum number of words sent to a worker at once
+     * @param heartbeat heartbeat interval in ms
+     * @param budget    budget the queries are accounted on, as they do not pass the local SUL
+     */
+    public WorkerCoordinatorOracle(List<InetSocketAddress> workers, int batchSize, int heartbeat, Budget budget) {
+        this.batchSize = batchSize;
+        this.heartbeat = heartbeat;
+        this.budget = budget;
+
+        for (InetSocketAddress address : workers) {
+            Connection connection = new Connection(address);
+            connections.add(connection);
+            Thread thread = new Thread(connection, "coordinator-" + address);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Parse a comma-separated list of host:port addresses.
+     */
+    public static List<InetSocketAddress> parseWorkers(String workers) throws Exception {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String worker : workers.split(",")) {
+            String[] parts = worker.trim().split(":");
+            if (parts.length != 2)
+                throw new Exception("Unknown worker address: " + worker);
+            addresses.add(new InetSocketAddress(parts[0], Integer.parseInt(parts[1])));
+        }
+        return addresses;
+    }
+
+    @Override
+    public void processQueries(Collection<? extends Query<String, Word<String>>> queries) {
+        // Execute every word once, the complete input is executed so the prefix is part of the output
+        Map<Word<String>, Word<String>> outputs = new LinkedHashMap<>();
+        for (Query<String, Word<String>> query : queries) {
+            outputs.put(query.getInput(), null);
+        }
+        if (outputs.isEmpty())
+            return;
+
+        for (Word<String> word : outputs.keySet()) {
+            budget.query();
+            for (int i = 0; i < word.length(); i++) {
+                budget.step();
+            }
+        }
+
+        List<Word<String>> words = new ArrayList<>(outputs.keySet());
+        List<Batch> batches = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch((words.size() + batchSize - 1) / batchSize);
+        for (int i = 0; i < words.size(); i += batchSize) {
+            batches.add(new Batch(batchIds.incrementAndGet(), words.subList(i, Math.min(i + batchSize, words.size())), done));
+        }
+        queue.addAll(batches);
+
+        try {
+            while (!done.await(heartbeat, TimeUnit.MILLISECONDS)) {
+                if (getAvailable() == 0)
+                    log.warn("No workers available, waiting for " + done.getCount() + " batches");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for workers");
+        }
+
+        for (Batch batch : batches) {
+            if (batch.error != null)
+                throw new RuntimeException("Batch " + batch.id + " failed on " + MAX_ATTEMPTS + " attempts: " + batch.error);
+            for (int i = 0; i < batch.words.size(); i++) {
+                outputs.put(batch.words.get(i), batch.outputs.get(i));
+            }
+        }
+
+        for (Query<String, Word<String>> query : queries) {
+            query.answer(outputs.get(query.getInput()).subWord(query.getPrefix().length()));
+        }
+    }
+
+    /*
+     * Put a batch back for the other workers, or fail it after too many attempts
+     */
+    private void failed(Batch batch, String error) {
+        synchronized (batch) {
+            batch.attempts++;
+            if (batch.attempts >= MAX_ATTEMPTS) {
+                batch.error = error;
+                batch.done.countDown();
+                return;
+            }
+        }
+        requeued.incrementAndGet();
+        queue.addFirst(batch);
+    }
+
+    public int getAvailable() {
+        int available = 0;
+        for (Connection connection : connections) {
+            if (connection.socket != null)
+                available++;
+        }
+        return available;
+    }
+
+    /**
+     * Stop the connections, the workers keep running.
+     */
+    public void shutdown() {
+        closed = true;
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return the number of batches put back in the queue, after a lost connection or an error of the worker
+     */
+    public long getRequeued() {
+        return requeued.get();
+    }
+
+    /**
+     * @return the number of batches the SULs of a worker failed to execute
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder("Workers: " + requeued.get() + " batches requeued, " + errors.get() + " errors");
+        for (Connection connection : connections) {
+            summary.append(", ").append(connection.address).append(": ").append(connection.batches).append(" batches, ").append(connection.words).append(" words, ").append(connection.failures).append(" failures");
+        }
+        return summary.toString();
+    }
+
+    /*
+     * Connection to a single worker, taking batches from the queue while the worker is available
+     */
+    private class Connection implements Runnable {
+        final InetSocketAddress address;
+        volatile Socket socket = null;
+        DataInputStream in;
+        DataOutputStream out;
+
+        long batches = 0;
+        long words = 0;
+        long failures = 0;
+
+        Connection(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                if (socket == null && !connect()) {
+                    sleep();
+                    continue;
+                }
+
+                Batch batch;
+                try {
+                    batch = queue.poll(heartbeat, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                if (batch == null) {
+                    try {
+                        WorkerProtocol.writeHeartbeat(out);
+                        receive(WorkerProtocol.HEARTBEAT);
+                    } catch (IOException e) {
+                        lost(e);
+                    }
+                    continue;
+                }
+
+                try {
+                    WorkerProtocol.writeQueries(out, batch.id, heartbeat, batch.words);
+                    WorkerProtocol.Message answer = receive(WorkerProtocol.ANSWERS);
+                    if (answer.id != batch.id || answer.words.size() != batch.words.size())
+                        throw new IOException("Unexpected answer " + answer.id + " for batch " + batch.id);
+
+                    batch.outputs = answer.words;
+                    batch.done.countDown();
+                    batches++;
+                    words += batch.words.size();
+                } catch (WorkerException e) {
+                    // The connection is fine, but the SUL of the worker failed
+                    log.warn("Batch " + batch.id + " failed on worker " + address + ": " + e.getMessage());
+                    failures++;
+                    errors.incrementAndGet();
+                    failed(batch, e.getMessage());
+                } catch (IOException e) {
+                    lost(e);
+                    failed(batch, e.toString());
+                }
+            }
+        }
+
+        /*
+         * Read messages until one of the expected type, heartbeats of a busy worker reset the timeout
+         */
+        WorkerProtocol.Message receive(byte type) throws IOException {
+            while (true) {
+                WorkerProtocol.Message message = WorkerProtocol.read(in);
+                if (message.type == type)
+                    return message;
+                if (message.type == WorkerProtocol.ERROR)
+                    throw new WorkerException(message.error);
+                if (message.type != WorkerProtocol.HEARTBEAT)
+                    throw new IOException("Unexpected message type: " + message.type);
+            }
+        }
+
+        boolean connect() {
+            try {
+                Socket socket = new Socket();
+                socket.connect(address, heartbeat);
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(3 * heartbeat);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                this.socket = socket;
+                log.info("Connected to worker " + address);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        void lost(IOException e) {
+            if (!closed) {
+                log.warn("Lost worker " + address + ": " + e);
+                failures++;
+            }
+            close();
+        }
+
+        void close() {
+            Socket socket = this.socket;
+            this.socket = null;
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+
+        void sleep() {
+            try {
+                Thread.sleep(heartbeat);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class WorkerException extends IOException {
+        WorkerException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package learner;
+
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Messages exchanged between the learner and the {@link Worker} daemons.
+ * <p>
+ * Every message is sent as a frame: the length of the message as a 4 byte integer, followed by the message. A message
+ * starts with its type, followed by:
+ * <ul>
+ * <li>QUERIES: batch id, heartbeat interval in ms, number of words, and for every word its length and symbols</li>
+ * <li>ANSWERS: batch id, number of words, and for every output word its length and symbols (null outputs are marked)</li>
+ * <li>ERROR: batch id and message</li>
+ * <li>HEARTBEAT: no content</li>
+ * </ul>
+ * A worker answers a HEARTBEAT with a HEARTBEAT, and sends a HEARTBEAT every interval while it executes a batch.
+ */
+public class WorkerProtocol {
+
+    public static final byte QUERIES = 1;
+    public static final byte ANSWERS = 2;
+    public static final byte ERROR = 3;
+    public static final byte HEARTBEAT = 4;
+
+    // Larger frames are treated as a corrupted stream
+    private static final int MAX_FRAME = 64 * 1024 * 1024;
+
+    public static class Message {
+        public final byte type;
+        public final int id;
+        public final int heartbeat;
+        public final List<Word<String>> words;
+        public final String error;
+
+        private Message(byte type, int id, int heartbeat, List<Word<String>> words, String error) {
+            this.type = type;
+            this.id = id;
+            this.heartbeat = heartbeat;
+            this.words = words;
+            this.error = error;
+        }
+    }
+
+    public static void writeQueries(DataOutputStream out, int id, int heartbeat, List<Word<String>> words) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream message = new DataOutputStream(bytes);
+        message.writeByte(QUERIES);
+        message.writeInt(id);
+        message.writeInt(heartbeat);
+        writeWords(message, words);
+        writeFrame(out, bytes.toByteArray());
+    }
+
+    public static void writeAnswers(DataOutputStream out, int id, List<Word<String>> outputs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream message = new DataOutputStream(bytes);
+        message.writeByte(ANSWERS);
+        message.writeInt(id);
+        writeWords(message, outputs);
+        writeFrame(out, bytes.toByteArray());
+    }
+
+    public static void writeError(DataOutputStream out, int id, String error) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream message = new DataOutputStream(bytes);
+        message.writeByte(ERROR);
+        message.writeInt(id);
+        message.writeUTF(error == null ? "" : error);
+        writeFrame(out, bytes.toByteArray());
+    }
+
+    public static void writeHeartbeat(DataOutputStream out) throws IOException {
+        writeFrame(out, new byte[]{HEARTBEAT});
+    }
+
+    /**
+     * Read the next message, blocking until it is complete.
+     */
+    public static Message read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > MAX_FRAME)
+            throw new IOException("Invalid frame length: " + length);
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+
+        DataInputStream message = new DataInputStream(new ByteArrayInputStream(frame));
+        byte type = message.readByte();
+        switch (type) {
+            case QUERIES: {
+                int id = message.readInt();
+                int heartbeat = message.readInt();
+                return new Message(type, id, heartbeat, readWords(message), null);
+            }
+            case ANSWERS: {
+                int id = message.readInt();
+                return new Message(type, id, 0, readWords(message), null);
+            }
+            case ERROR: {
+                int id = message.readInt();
+                return new Message(type, id, 0, null, message.readUTF());
+            }
+            case HEARTBEAT:
+                return new Message(type, 0, 0, null, null);
+            default:
+                throw new IOException("Unknown message type: " + type);
+        }
+    }
+
+    private static void writeFrame(DataOutputStream out, byte[] frame) throws IOException {
+        // Heartbeats of the worker are sent from another thread than the answers
+        synchronized (out) {
+            out.writeInt(frame.length);
+            out.write(frame);
+            out.flush();
+        }
+    }
+
+    private static void writeWords(DataOutputStream out, List<Word<String>> words) throws IOException {
+        out.writeInt(words.size());
+        for (Word<String> word : words) {
+            if (word == null) {
+                out.writeInt(-1);
+                continue;
+            }
+            out.writeInt(word.length());
+            for (String symbol : word) {
+                out.writeBoolean(symbol != null);
+                if (symbol != null)
+                    out.writeUTF(symbol);
+            }
+        }
+    }
+
+    private static List<Word<String>> readWords(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Word<String>> words = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = in.readInt();
+            if (length < 0) {
+                words.add(null);
+                continue;
+            }
+            WordBuilder<String> word = new WordBuilder<>(length);
+            for (int j = 0; j < length; j++) {
+                word.append(in.readBoolean() ? in.readUTF() : null);
+            }
+            words.add(word.toWord());
+        }
+        return words;
+    }
+}
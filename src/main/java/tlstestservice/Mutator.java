@@ -0,0 +1,20 @@
+package tlstestservice;
+
+/**
+ * Changes messages before they are sent to the target, used for fuzzing.
+ */
+public interface Mutator {
+    /**
+     * Called with the content of every message before the MAC is added and it is encrypted.
+     *
+     * @return the content to send instead
+     */
+    byte[] mutateMessage(byte contentType, byte[] message);
+
+    /**
+     * Called with every record as it is sent, after encryption.
+     *
+     * @return the bytes to send instead
+     */
+    byte[] mutateRecord(byte[] record);
+}
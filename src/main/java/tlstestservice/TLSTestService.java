@@ -109,6 +109,9 @@ public class TLSTestService {
     Process targetProcess;
     TLSClient tlsClient;
 
+    // Changes the messages that are sent, used for fuzzing
+    Mutator mutator = null;
+
 
     public static TLSTestService createTLSServerTestService(String cmd, int port, boolean restart) throws Exception {
         TLSTestService service = new TLSTestService();
@@ -294,6 +297,20 @@ public void setReceiveMessagesTimeout(int timeout) {
         RECEIVE_MSG_TIMEOUT = timeout;
     }
 
+    /**
+     * @param mutator changes the messages that are sent from now on, or null to send them unchanged
+     */
+    public void setMutator(Mutator mutator) {
+        this.mutator = mutator;
+    }
+
+    /**
+     * @return true if the target process was killed by a signal (for instance a segmentation fault)
+     */
+    public boolean hasTargetCrashed() {
+        return targetProcess != null && !targetProcess.isAlive() && targetProcess.exitValue() >= 128;
+    }
+
     public void setOpenSSLMode(boolean enable) {
         OPENSSL_MODE = enable;
     }
@@ -793,6 +810,8 @@ public String receiveMessages() throws Exception {
     }
 
     void sendMessage(byte type, byte[] msg) throws Exception {
+        if (mutator != null)
+            msg = mutator.mutateMessage(type, msg);
         Record record = new Record(type, currentTLS.getProtocolVersion(), msg);
 
         if (ccs_out) {
@@ -805,8 +824,12 @@ void sendMessage(byte type, byte[] msg) throws Exception {
             record.encrypt(writeCipher, rand);
         }
 
-        if (DEBUG) log.debug("Sending record: " + Utils.bytesToHexString(record.getBytes()));
-        output.write(record.getBytes());
+        byte[] bytes = record.getBytes();
+        if (mutator != null)
+            bytes = mutator.mutateRecord(bytes);
+
+        if (DEBUG) log.debug("Sending record: " + Utils.bytesToHexString(bytes));
+        output.write(bytes);
     }
 
     void sendHandshakeMessage(HandshakeMsg msg) throws Exception {
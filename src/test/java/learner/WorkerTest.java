@@ -0,0 +1,318 @@
+package learner;
+
+import de.learnlib.api.SUL;
+import de.learnlib.oracles.DefaultQuery;
+import net.automatalib.automata.transout.impl.compact.CompactMealy;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import net.automatalib.words.impl.SimpleAlphabet;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the distributed setup on localhost, without a TLS target: {@link WorkerProtocol} messages are written and read
+ * back, and several {@link Worker} processes execute queries on a simulated target for a
+ * {@link WorkerCoordinatorOracle}. All answers are compared with the model of the simulated target.
+ * <p>
+ * One worker is slow and is killed while it executes a batch, so its batches have to be requeued on the others. The
+ * simulated target of another worker fails every 25th reset, so batches fail on it with an ERROR message and are
+ * executed again on another worker.
+ * <p>
+ * A separate worker executes batches of words that each take less than a heartbeat interval, while the whole batch
+ * takes several intervals. It has to send heartbeats during the batch, so none of its batches is requeued.
+ * <p>
+ * The workers are started as separate processes running the main method of this class.
+ */
+public class WorkerTest {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkerTest.class);
+
+    private static final long SEED = 42;
+    private static final int WORKERS = 3;
+    private static final int ROUNDS = 10;
+    private static final int WORDS = 200;
+    private static final int MAX_LENGTH = 8;
+    private static final int HEARTBEAT = 500;
+
+    /**
+     * Simulated target executing a model, optionally failing every given number of resets.
+     */
+    private static class ModelSUL implements SUL<String, String> {
+        private final CompactMealy<String, String> model;
+        private final int failEvery;
+        private final long stepDelay;
+        private final AtomicLong resets;
+        private Integer state;
+
+        ModelSUL(CompactMealy<String, String> model, int failEvery, long stepDelay, AtomicLong resets) {
+            this.model = model;
+            this.failEvery = failEvery;
+            this.stepDelay = stepDelay;
+            this.resets = resets;
+        }
+
+        @Override
+        public void reset() {
+            if (failEvery > 0 && resets.incrementAndGet() % failEvery == 0)
+                throw new RuntimeException("Simulated reset failure");
+            state = model.getInitialState();
+        }
+
+        @Override
+        public String step(String input) {
+            try {
+                Thread.sleep(stepDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String output = model.getOutput(state, input);
+            state = model.getSuccessor(state, input);
+            return output;
+        }
+    }
+
+    /**
+     * Run a worker process: &lt;port&gt; &lt;failEvery&gt; &lt;stepDelay&gt;
+     */
+    public static void main(String[] args) throws Exception {
+        runWorker(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Long.parseLong(args[2]));
+    }
+
+    /*
+     * Model of the simulated target: a random machine with TLS-like inputs and outputs, in which a closed connection
+     * stays closed
+     */
+    private static CompactMealy<String, String> createModel() {
+        Random random = new Random(SEED);
+        SimpleAlphabet<String> inputs = new SimpleAlphabet<>();
+        inputs.addAll(Arrays.asList("ClientHello", "Certificate", "ClientKeyExchange", "ChangeCipherSpec", "Finished", "ApplicationData"));
+        String[] outputs = {"ServerHello", "Alert", "Empty", "ChangeCipherSpecFinished", "ApplicationData", "ConnectionClosed"};
+
+        CompactMealy<String, String> model = new CompactMealy<>(inputs);
+        int size = 10;
+        for (int i = 0; i < size; i++) {
+            model.addState();
+        }
+        model.setInitialState(0);
+        for (int state = 0; state < size - 1; state++) {
+            for (String input : inputs) {
+                String output = outputs[random.nextInt(outputs.length)];
+                model.addTransition(state, input, output.equals("ConnectionClosed") ? size - 1 : random.nextInt(size - 1), output);
+            }
+        }
+        for (String input : inputs) {
+            model.addTransition(size - 1, input, size - 1, "ConnectionClosed");
+        }
+        return model;
+    }
+
+    private static void runWorker(int port, int failEvery, long stepDelay) throws Exception {
+        CompactMealy<String, String> model = createModel();
+        AtomicLong resets = new AtomicLong();
+        List<SUL<String, String>> suls = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            suls.add(new ModelSUL(model, failEvery, stepDelay, resets));
+        }
+        new Worker(new SULPool<>(suls), port).run();
+    }
+
+    /*
+     * Write every message type and read it back
+     */
+    @Test
+    public void protocol() throws IOException {
+        List<Word<String>> words = Arrays.asList(Word.fromSymbols("ClientHello", "Finished"), Word.<String>epsilon(), null, Word.fromSymbols("Empty", null, "Alert"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        WorkerProtocol.writeQueries(out, 1, 500, words.subList(0, 2));
+        WorkerProtocol.writeAnswers(out, 2, words);
+        WorkerProtocol.writeError(out, 3, "java.lang.RuntimeException: Simulated reset failure");
+        WorkerProtocol.writeHeartbeat(out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        WorkerProtocol.Message queries = WorkerProtocol.read(in);
+        WorkerProtocol.Message answers = WorkerProtocol.read(in);
+        WorkerProtocol.Message error = WorkerProtocol.read(in);
+        WorkerProtocol.Message heartbeat = WorkerProtocol.read(in);
+
+        assertEquals(WorkerProtocol.QUERIES, queries.type);
+        assertEquals(1, queries.id);
+        assertEquals(500, queries.heartbeat);
+        assertEquals(words.subList(0, 2), queries.words);
+        assertEquals(WorkerProtocol.ANSWERS, answers.type);
+        assertEquals(2, answers.id);
+        assertEquals(words, answers.words);
+        assertEquals(WorkerProtocol.ERROR, error.type);
+        assertEquals(3, error.id);
+        assertEquals("java.lang.RuntimeException: Simulated reset failure", error.error);
+        assertEquals(WorkerProtocol.HEARTBEAT, heartbeat.type);
+        assertEquals(0, in.available());
+    }
+
+    /*
+     * Start the worker processes and execute rounds of random queries, killing the slow worker during the third round
+     */
+    @Test
+    public void workers() throws Exception {
+        CompactMealy<String, String> model = createModel();
+        List<String> inputs = new ArrayList<>(model.getInputAlphabet());
+        File logDirectory = Files.createTempDirectory("workercheck").toFile();
+
+        List<Process> processes = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        WorkerCoordinatorOracle coordinator = null;
+        try {
+            for (int i = 0; i < WORKERS; i++) {
+                int port = freePort();
+                // Worker 0 is slow and is killed, worker 1 fails resets, the others are reliable
+                processes.add(startWorker(port, i == 1 ? 25 : 0, i == 0 ? 20 : 1, new File(logDirectory, "worker-" + i + ".log")));
+                addresses.add(new InetSocketAddress("localhost", port));
+            }
+            log.info("Started " + WORKERS + " workers, logging to " + logDirectory);
+
+            coordinator = new WorkerCoordinatorOracle(addresses, 10, HEARTBEAT, new Budget(0, 0, 0, 0, 0, 0));
+            assertTrue("all workers connected", connected(coordinator, WORKERS));
+
+            Random random = new Random(SEED);
+            long wrong = 0;
+            for (int round = 1; round <= ROUNDS; round++) {
+                List<DefaultQuery<String, Word<String>>> queries = new ArrayList<>();
+                for (int i = 0; i < WORDS; i++) {
+                    WordBuilder<String> word = new WordBuilder<>();
+                    int length = 1 + random.nextInt(MAX_LENGTH);
+                    for (int j = 0; j < length; j++) {
+                        word.append(inputs.get(random.nextInt(inputs.size())));
+                    }
+                    // Some queries with a prefix, to check that only the suffix is answered
+                    Word<String> input = word.toWord();
+                    int split = random.nextInt(input.length() + 1);
+                    queries.add(new DefaultQuery<>(input.prefix(split), input.subWord(split)));
+                }
+
+                if (round == 3)
+                    kill(processes.get(0), 300);
+                coordinator.processQueries(queries);
+
+                for (DefaultQuery<String, Word<String>> query : queries) {
+                    Word<String> expected = model.computeOutput(query.getInput()).subWord(query.getPrefix().length());
+                    if (!expected.equals(query.getOutput())) {
+                        log.error("Wrong answer for " + query.getPrefix() + " | " + query.getSuffix() + ": " + query.getOutput() + ", expected " + expected);
+                        wrong++;
+                    }
+                }
+            }
+            log.info(coordinator.getSummary());
+
+            assertEquals("wrong answers", 0, wrong);
+            assertTrue("batches of the killed worker requeued", coordinator.getRequeued() > coordinator.getErrors());
+            assertTrue("reset failures reported as errors", coordinator.getErrors() > 0);
+            assertEquals("available workers", WORKERS - 1, coordinator.getAvailable());
+        } finally {
+            if (coordinator != null)
+                coordinator.shutdown();
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    /*
+     * Execute batches of 20 words of 8 steps of 40 ms on a worker with 2 SULs: every word takes 320 ms, less than a
+     * heartbeat interval, but a batch takes 3.2 s, more than the read timeout of the coordinator of 3 intervals
+     */
+    @Test(timeout = 60000)
+    public void heartbeats() throws Exception {
+        CompactMealy<String, String> model = createModel();
+        List<String> inputs = new ArrayList<>(model.getInputAlphabet());
+        File logDirectory = Files.createTempDirectory("workercheck").toFile();
+
+        Process process = null;
+        WorkerCoordinatorOracle coordinator = null;
+        try {
+            int port = freePort();
+            process = startWorker(port, 0, 40, new File(logDirectory, "worker-heartbeat.log"));
+            log.info("Started worker with long batches, logging to " + logDirectory);
+
+            coordinator = new WorkerCoordinatorOracle(Collections.singletonList(new InetSocketAddress("localhost", port)), 20, HEARTBEAT, new Budget(0, 0, 0, 0, 0, 0));
+            assertTrue("worker connected", connected(coordinator, 1));
+
+            Random random = new Random(SEED);
+            List<DefaultQuery<String, Word<String>>> queries = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                WordBuilder<String> word = new WordBuilder<>();
+                for (int j = 0; j < MAX_LENGTH; j++) {
+                    word.append(inputs.get(random.nextInt(inputs.size())));
+                }
+                queries.add(new DefaultQuery<String, Word<String>>(word.toWord()));
+            }
+            coordinator.processQueries(queries);
+
+            long wrong = 0;
+            for (DefaultQuery<String, Word<String>> query : queries) {
+                if (!model.computeOutput(query.getInput()).equals(query.getOutput()))
+                    wrong++;
+            }
+            log.info(coordinator.getSummary());
+
+            assertEquals("wrong answers", 0, wrong);
+            assertEquals("requeued batches", 0, coordinator.getRequeued());
+            assertEquals("available workers", 1, coordinator.getAvailable());
+        } finally {
+            if (coordinator != null)
+                coordinator.shutdown();
+            if (process != null)
+                process.destroy();
+        }
+    }
+
+    private static Process startWorker(int port, int failEvery, long stepDelay, File logFile) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(System.getProperty("java.home") + "/bin/java", "-cp", System.getProperty("java.class.path"), WorkerTest.class.getName(), Integer.toString(port), Integer.toString(failEvery), Long.toString(stepDelay));
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(logFile);
+        return builder.start();
+    }
+
+    private static boolean connected(WorkerCoordinatorOracle coordinator, int workers) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (coordinator.getAvailable() < workers) {
+            if (System.currentTimeMillis() > deadline)
+                return false;
+            Thread.sleep(100);
+        }
+        return true;
+    }
+
+    private static void kill(final Process process, final long delay) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                log.info("Killing worker 0");
+                process.destroyForcibly();
+            }
+        }, "workercheck-kill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}